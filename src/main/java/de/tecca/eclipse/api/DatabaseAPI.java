@@ -1,7 +1,11 @@
 package de.tecca.eclipse.api;
 
 import de.tecca.eclipse.api.database.*;
+import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.Optional;
 import java.util.List;
 import java.util.Map;
@@ -9,27 +13,68 @@ import java.util.Map;
 public interface DatabaseAPI {
 
     QueryBuilder table(String tableName);
+    <K> BatchLoader<K, Map<String, Object>> batchLoader(String tableName, String keyColumn);
+    <K> BatchLoader<K, Map<String, Object>> batchLoader(String tableName, String keyColumn,
+                                                        long windowMillis, int maxBatchSize, boolean cached);
 
     CompletableFuture<List<Map<String, Object>>> query(String sql, Object... params);
+    CompletableFuture<RowSet> queryRowSet(String sql, Object... params);
+    <T> CompletableFuture<List<T>> query(Class<T> type, String sql, Object... params);
     CompletableFuture<Integer> update(String sql, Object... params);
     CompletableFuture<Void> execute(String sql, Object... params);
+    CompletableFuture<Long> stream(String sql, Consumer<Map<String, Object>> rowConsumer, Object... params);
 
     <T> CompletableFuture<Void> setJSON(String key, T data);
     <T> CompletableFuture<Optional<T>> getJSON(String key, Class<T> type);
     CompletableFuture<Void> removeJSON(String key);
     CompletableFuture<List<String>> listJSONKeys(String prefix);
+    DatabaseAPI useLogStructuredJSON();
+    DatabaseAPI setJSONFlushDelay(Duration delay);
+    CompletableFuture<Void> flushJSON(String key);
+    CompletableFuture<Void> flushAllJSON();
 
     Transaction beginTransaction();
+    CompletableFuture<Void> session(Consumer<Session> work);
+    <T> CompletableFuture<T> withConnection(Function<Session, T> work);
+
+    DatabaseAPI setQueryCacheSize(int maxEntries);
+    void invalidateCache(String tableName);
+    QueryCacheStats getQueryCacheStats();
+    long getCoalescedQueryCount();
 
     DatabaseAPI configureMySQL(String host, int port, String database, String username, String password);
     DatabaseAPI configureSQLite(String filename);
+    DatabaseAPI configureSQLite(String filename, int readerConnections);
+    DatabaseAPI configureShardedMySQL(String database, String username, String password, String... hostPorts);
+    DatabaseAPI configureShardedSQLite(String... filenames);
+    DatabaseAPI shardKey(String tableName, String column);
+    DatabaseAPI addReadReplica(String host, int port);
+    DatabaseAPI addReadReplica(String filename);
+    DatabaseAPI setReplicaRouting(ReplicaRouting routing);
+    <T> T onPrimary(Supplier<T> work);
+    DatabaseAPI setQueryTimeout(Duration timeout);
+    <T> T withQueryTimeout(Duration timeout, Supplier<T> work);
+    long getTimedOutQueryCount();
+    long getCancelledQueryCount();
+    DatabaseAPI setOverloadPolicy(OverloadPolicy policy);
+    <T> T withPriority(QueryPriority priority, Supplier<T> work);
+    boolean isOverloaded();
+    Optional<AdmissionStats> getAdmissionStats();
     DatabaseAPI setPoolSize(int minConnections, int maxConnections);
+    DatabaseAPI useVirtualThreads(boolean enabled);
+    DatabaseAPI enableGroupCommit(long flushWindowMillis, int maxGroupSize);
+    Optional<GroupCommitStats> getGroupCommitStats();
+    DatabaseAPI enableWriteBehind(long flushIntervalMillis, int maxBufferedRows);
+    DatabaseAPI writeBehind(String tableName, String... keyColumns);
+    CompletableFuture<Void> flushWriteBehind();
+    Counter counter(String tableName, String keyColumn, String valueColumn);
+    Counter counter(String tableName, String keyColumn, String valueColumn, long flushIntervalMillis);
 
     boolean isConnected();
     DatabaseType getType();
     void shutdown();
 
     enum DatabaseType {
-        MYSQL, SQLITE, JSON_ONLY
+        MYSQL, SQLITE, SHARDED, JSON_ONLY
     }
 }
\ No newline at end of file
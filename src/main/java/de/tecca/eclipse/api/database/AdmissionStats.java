@@ -0,0 +1,47 @@
+package de.tecca.eclipse.api.database;
+
+public class AdmissionStats {
+    private final int queueDepth;
+    private final int queueCapacity;
+    private final int interactiveDepth;
+    private final int normalDepth;
+    private final int backgroundDepth;
+    private final long executedTasks;
+    private final long rejectedTasks;
+    private final long shedTasks;
+    private final long callerRunsTasks;
+    private final double averageWaitMillis;
+    private final double maxWaitMillis;
+
+    public AdmissionStats(int queueDepth, int queueCapacity, int interactiveDepth, int normalDepth, int backgroundDepth,
+                          long executedTasks, long rejectedTasks, long shedTasks, long callerRunsTasks,
+                          double averageWaitMillis, double maxWaitMillis) {
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.interactiveDepth = interactiveDepth;
+        this.normalDepth = normalDepth;
+        this.backgroundDepth = backgroundDepth;
+        this.executedTasks = executedTasks;
+        this.rejectedTasks = rejectedTasks;
+        this.shedTasks = shedTasks;
+        this.callerRunsTasks = callerRunsTasks;
+        this.averageWaitMillis = averageWaitMillis;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public int getQueueDepth() { return queueDepth; }
+    public int getQueueCapacity() { return queueCapacity; }
+    public int getInteractiveDepth() { return interactiveDepth; }
+    public int getNormalDepth() { return normalDepth; }
+    public int getBackgroundDepth() { return backgroundDepth; }
+    public long getExecutedTasks() { return executedTasks; }
+    public long getRejectedTasks() { return rejectedTasks; }
+    public long getShedTasks() { return shedTasks; }
+    public long getCallerRunsTasks() { return callerRunsTasks; }
+    public double getAverageWaitMillis() { return averageWaitMillis; }
+    public double getMaxWaitMillis() { return maxWaitMillis; }
+
+    public double getUtilization() {
+        return queueCapacity == 0 ? 0.0 : (double) queueDepth / queueCapacity;
+    }
+}
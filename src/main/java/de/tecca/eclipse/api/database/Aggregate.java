@@ -0,0 +1,20 @@
+package de.tecca.eclipse.api.database;
+
+public enum Aggregate {
+    SUM("SUM(%s)"),
+    AVG("AVG(%s)"),
+    MIN("MIN(%s)"),
+    MAX("MAX(%s)"),
+    COUNT("COUNT(%s)"),
+    COUNT_DISTINCT("COUNT(DISTINCT %s)");
+
+    private final String template;
+
+    Aggregate(String template) {
+        this.template = template;
+    }
+
+    public String expression(String column) {
+        return String.format(template, column);
+    }
+}
@@ -0,0 +1,18 @@
+package de.tecca.eclipse.api.database;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+public interface BatchLoader<K, V> {
+
+    CompletableFuture<Optional<V>> load(K key);
+    CompletableFuture<Map<K, V>> loadMany(Collection<K> keys);
+
+    void invalidate(K key);
+    void invalidateAll();
+
+    long getBatchCount();
+    long getLoadCount();
+}
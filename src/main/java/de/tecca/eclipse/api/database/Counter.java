@@ -0,0 +1,13 @@
+package de.tecca.eclipse.api.database;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface Counter {
+
+    void increment(Object key);
+    void decrement(Object key);
+    void add(Object key, long delta);
+
+    long getPending(Object key);
+    CompletableFuture<Void> flush();
+}
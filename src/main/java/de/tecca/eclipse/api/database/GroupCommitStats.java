@@ -0,0 +1,34 @@
+package de.tecca.eclipse.api.database;
+
+public class GroupCommitStats {
+    private final long commits;
+    private final long writes;
+    private final long failedWrites;
+    private final int pendingWrites;
+    private final double commitsPerSecond;
+    private final double averageGroupSize;
+    private final long flushWindowMillis;
+    private final int maxGroupSize;
+
+    public GroupCommitStats(long commits, long writes, long failedWrites, int pendingWrites,
+                            double commitsPerSecond, double averageGroupSize,
+                            long flushWindowMillis, int maxGroupSize) {
+        this.commits = commits;
+        this.writes = writes;
+        this.failedWrites = failedWrites;
+        this.pendingWrites = pendingWrites;
+        this.commitsPerSecond = commitsPerSecond;
+        this.averageGroupSize = averageGroupSize;
+        this.flushWindowMillis = flushWindowMillis;
+        this.maxGroupSize = maxGroupSize;
+    }
+
+    public long getCommits() { return commits; }
+    public long getWrites() { return writes; }
+    public long getFailedWrites() { return failedWrites; }
+    public int getPendingWrites() { return pendingWrites; }
+    public double getCommitsPerSecond() { return commitsPerSecond; }
+    public double getAverageGroupSize() { return averageGroupSize; }
+    public long getFlushWindowMillis() { return flushWindowMillis; }
+    public int getMaxGroupSize() { return maxGroupSize; }
+}
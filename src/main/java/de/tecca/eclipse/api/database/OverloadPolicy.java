@@ -0,0 +1,7 @@
+package de.tecca.eclipse.api.database;
+
+public enum OverloadPolicy {
+    REJECT,
+    SHED,
+    CALLER_RUNS
+}
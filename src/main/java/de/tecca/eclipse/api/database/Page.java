@@ -0,0 +1,19 @@
+package de.tecca.eclipse.api.database;
+
+import java.util.List;
+import java.util.Map;
+
+public class Page {
+    private final List<Map<String, Object>> rows;
+    private final String nextToken;
+
+    public Page(List<Map<String, Object>> rows, String nextToken) {
+        this.rows = rows;
+        this.nextToken = nextToken;
+    }
+
+    public List<Map<String, Object>> getRows() { return rows; }
+    public String getNextToken() { return nextToken; }
+    public boolean hasNext() { return nextToken != null; }
+    public int size() { return rows.size(); }
+}
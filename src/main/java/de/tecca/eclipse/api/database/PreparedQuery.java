@@ -0,0 +1,15 @@
+package de.tecca.eclipse.api.database;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.List;
+import java.util.Map;
+
+public interface PreparedQuery {
+
+    String getSql();
+    int getParameterCount();
+
+    CompletableFuture<List<Map<String, Object>>> query(Object... params);
+    CompletableFuture<RowSet> queryRowSet(Object... params);
+    CompletableFuture<Integer> update(Object... params);
+}
@@ -1,7 +1,10 @@
 package de.tecca.eclipse.api.database;
 
+import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.Optional;
+import java.util.OptionalDouble;
 import java.util.List;
 import java.util.Map;
 
@@ -16,15 +19,41 @@ public interface QueryBuilder {
     QueryBuilder orderBy(String column, String direction);
     QueryBuilder limit(int limit);
     QueryBuilder offset(int offset);
+    QueryBuilder cached(Duration ttl);
+    QueryBuilder coalesce();
+    QueryBuilder coalesce(boolean enabled);
+    QueryBuilder timeout(Duration timeout);
+    QueryBuilder priority(QueryPriority priority);
+    QueryBuilder onPrimary();
 
     CompletableFuture<List<Map<String, Object>>> get();
+    CompletableFuture<RowSet> getRowSet();
+    <T> CompletableFuture<List<T>> as(Class<T> type);
     CompletableFuture<Optional<Map<String, Object>>> first();
     CompletableFuture<Long> count();
 
+    QueryBuilder groupBy(String... columns);
+    QueryBuilder having(Aggregate aggregate, String column, String operator, Object value);
+    CompletableFuture<Number> sum(String column);
+    CompletableFuture<OptionalDouble> avg(String column);
+    CompletableFuture<Optional<Object>> min(String column);
+    CompletableFuture<Optional<Object>> max(String column);
+    CompletableFuture<Long> countDistinct(String column);
+    CompletableFuture<Map<Object, Object>> aggregateBy(Aggregate aggregate, String column);
+
+    QueryBuilder after(String pageToken);
+    CompletableFuture<Page> paginate(String orderColumn, int pageSize);
+    CompletableFuture<Page> paginate(String orderColumn, String tiebreakerColumn, int pageSize);
+
+    QueryBuilder fetchSize(int fetchSize);
+    CompletableFuture<Long> stream(Consumer<Map<String, Object>> rowConsumer);
+
     QueryBuilder insert();
     QueryBuilder insertOrUpdate();
     QueryBuilder value(String column, Object value);
     QueryBuilder values(Map<String, Object> values);
+    CompletableFuture<Integer> insertMany(List<Map<String, Object>> rows);
+    CompletableFuture<Integer> upsertMany(List<Map<String, Object>> rows, String... keyColumns);
 
     QueryBuilder update();
     QueryBuilder set(String column, Object value);
@@ -36,7 +65,10 @@ public interface QueryBuilder {
     CompletableFuture<Integer> execute();
     CompletableFuture<Void> executeVoid();
 
+    PreparedQuery prepare();
+
     QueryBuilder batch();
+    QueryBuilder batch(int chunkSize);
     QueryBuilder addBatch();
     CompletableFuture<int[]> executeBatch();
 
@@ -0,0 +1,7 @@
+package de.tecca.eclipse.api.database;
+
+public enum QueryPriority {
+    INTERACTIVE,
+    NORMAL,
+    BACKGROUND
+}
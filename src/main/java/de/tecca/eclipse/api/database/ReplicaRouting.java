@@ -0,0 +1,6 @@
+package de.tecca.eclipse.api.database;
+
+public enum ReplicaRouting {
+    ROUND_ROBIN,
+    LEAST_ACTIVE
+}
@@ -0,0 +1,344 @@
+package de.tecca.eclipse.api.database;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+public class RowSet {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final String[] columnNames;
+    private final Map<String, Integer> columnIndex;
+    private final Object[] columns;
+    private final BitSet[] nulls;
+    private final int rowCount;
+
+    private RowSet(String[] columnNames, Object[] columns, BitSet[] nulls, int rowCount) {
+        this.columnNames = columnNames;
+        this.columns = columns;
+        this.nulls = nulls;
+        this.rowCount = rowCount;
+
+        Map<String, Integer> index = new HashMap<>(columnNames.length * 2);
+        for (int i = 0; i < columnNames.length; i++) {
+            index.putIfAbsent(columnNames[i], i);
+        }
+        this.columnIndex = Collections.unmodifiableMap(index);
+    }
+
+    public static RowSet fromResultSet(ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+
+        String[] columnNames = new String[columnCount];
+        int[] columnTypes = new int[columnCount];
+        Object[] columns = new Object[columnCount];
+        BitSet[] nulls = new BitSet[columnCount];
+
+        for (int i = 0; i < columnCount; i++) {
+            columnNames[i] = metaData.getColumnLabel(i + 1);
+            columnTypes[i] = metaData.getColumnType(i + 1);
+            // Unsigned BIGINT values can exceed a long, so they stay boxed; unsigned INT ones go to a long
+            if (columnTypes[i] == Types.BIGINT && !metaData.isSigned(i + 1)) {
+                columnTypes[i] = Types.NUMERIC;
+            } else if (columnTypes[i] == Types.INTEGER && !metaData.isSigned(i + 1)) {
+                columnTypes[i] = Types.BIGINT;
+            }
+            columns[i] = allocate(columnTypes[i], INITIAL_CAPACITY);
+            nulls[i] = new BitSet();
+        }
+
+        int capacity = INITIAL_CAPACITY;
+        int row = 0;
+
+        while (rs.next()) {
+            if (row == capacity) {
+                capacity *= 2;
+                for (int i = 0; i < columnCount; i++) {
+                    columns[i] = grow(columns[i], capacity);
+                }
+            }
+
+            for (int i = 0; i < columnCount; i++) {
+                Object column = columns[i];
+                if (column instanceof int[] ints) {
+                    // SQLite INTEGER columns hold 64-bit values; the first one too big for an int widens the column
+                    long value = rs.getLong(i + 1);
+                    if (value == (int) value) {
+                        ints[row] = (int) value;
+                    } else {
+                        long[] longs = widen(ints);
+                        longs[row] = value;
+                        columns[i] = longs;
+                    }
+                } else if (column instanceof long[] longs) {
+                    longs[row] = rs.getLong(i + 1);
+                } else if (column instanceof double[] doubles) {
+                    doubles[row] = rs.getDouble(i + 1);
+                } else if (column instanceof float[] floats) {
+                    floats[row] = rs.getFloat(i + 1);
+                } else {
+                    ((Object[]) column)[row] = rs.getObject(i + 1);
+                }
+
+                if (rs.wasNull()) {
+                    nulls[i].set(row);
+                }
+            }
+            row++;
+        }
+
+        return new RowSet(columnNames, columns, nulls, row);
+    }
+
+    public static RowSet empty() {
+        return new RowSet(new String[0], new Object[0], new BitSet[0], 0);
+    }
+
+    public int size() {
+        return rowCount;
+    }
+
+    public boolean isEmpty() {
+        return rowCount == 0;
+    }
+
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    public List<String> getColumnNames() {
+        return List.of(columnNames);
+    }
+
+    public int columnIndex(String column) {
+        Integer index = columnIndex.get(column);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown column: " + column);
+        }
+        return index;
+    }
+
+    public boolean hasColumn(String column) {
+        return columnIndex.containsKey(column);
+    }
+
+    public boolean isNull(int row, int column) {
+        checkRow(row);
+        return nulls[column].get(row);
+    }
+
+    public Object getObject(int row, int column) {
+        checkRow(row);
+        if (nulls[column].get(row)) {
+            return null;
+        }
+
+        Object values = columns[column];
+        if (values instanceof int[] ints) {
+            return ints[row];
+        }
+        if (values instanceof long[] longs) {
+            return longs[row];
+        }
+        if (values instanceof double[] doubles) {
+            return doubles[row];
+        }
+        if (values instanceof float[] floats) {
+            return floats[row];
+        }
+        return ((Object[]) values)[row];
+    }
+
+    public long getLong(int row, int column) {
+        checkRow(row);
+        Object values = columns[column];
+        if (values instanceof int[] ints) {
+            return ints[row];
+        }
+        if (values instanceof long[] longs) {
+            return longs[row];
+        }
+        if (values instanceof double[] doubles) {
+            return (long) doubles[row];
+        }
+        if (values instanceof float[] floats) {
+            return (long) floats[row];
+        }
+
+        Object value = ((Object[]) values)[row];
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+
+    public int getInt(int row, int column) {
+        return (int) getLong(row, column);
+    }
+
+    public double getDouble(int row, int column) {
+        checkRow(row);
+        Object values = columns[column];
+        if (values instanceof double[] doubles) {
+            return doubles[row];
+        }
+        if (values instanceof float[] floats) {
+            return floats[row];
+        }
+        if (values instanceof int[] ints) {
+            return ints[row];
+        }
+        if (values instanceof long[] longs) {
+            return longs[row];
+        }
+
+        Object value = ((Object[]) values)[row];
+        return value instanceof Number number ? number.doubleValue() : 0.0;
+    }
+
+    public boolean getBoolean(int row, int column) {
+        Object value = getObject(row, column);
+        if (value instanceof Boolean bool) {
+            return bool;
+        }
+        return value instanceof Number number && number.longValue() != 0;
+    }
+
+    public String getString(int row, int column) {
+        Object value = getObject(row, column);
+        return value != null ? value.toString() : null;
+    }
+
+    public Object getObject(int row, String column) { return getObject(row, columnIndex(column)); }
+    public long getLong(int row, String column) { return getLong(row, columnIndex(column)); }
+    public int getInt(int row, String column) { return getInt(row, columnIndex(column)); }
+    public double getDouble(int row, String column) { return getDouble(row, columnIndex(column)); }
+    public boolean getBoolean(int row, String column) { return getBoolean(row, columnIndex(column)); }
+    public String getString(int row, String column) { return getString(row, columnIndex(column)); }
+    public boolean isNull(int row, String column) { return isNull(row, columnIndex(column)); }
+
+    // Read-only row views for code that still expects List<Map<String, Object>>
+    public List<Map<String, Object>> asMaps() {
+        return new AbstractList<>() {
+            @Override
+            public Map<String, Object> get(int index) {
+                checkRow(index);
+                return new RowView(index);
+            }
+
+            @Override
+            public int size() {
+                return rowCount;
+            }
+        };
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for size " + rowCount);
+        }
+    }
+
+    // Primitive columns box back to the type the driver's getObject() returns: Integer for
+    // INTEGER, SMALLINT and TINYINT, Float for REAL, Double for FLOAT and DOUBLE
+    private static Object allocate(int sqlType, int capacity) {
+        return switch (sqlType) {
+            case Types.INTEGER, Types.SMALLINT, Types.TINYINT -> new int[capacity];
+            case Types.BIGINT -> new long[capacity];
+            case Types.DOUBLE, Types.FLOAT -> new double[capacity];
+            case Types.REAL -> new float[capacity];
+            default -> new Object[capacity];
+        };
+    }
+
+    private static Object grow(Object column, int capacity) {
+        if (column instanceof int[] ints) {
+            return Arrays.copyOf(ints, capacity);
+        }
+        if (column instanceof long[] longs) {
+            return Arrays.copyOf(longs, capacity);
+        }
+        if (column instanceof double[] doubles) {
+            return Arrays.copyOf(doubles, capacity);
+        }
+        if (column instanceof float[] floats) {
+            return Arrays.copyOf(floats, capacity);
+        }
+        return Arrays.copyOf((Object[]) column, capacity);
+    }
+
+    private static long[] widen(int[] ints) {
+        long[] longs = new long[ints.length];
+        for (int i = 0; i < ints.length; i++) {
+            longs[i] = ints[i];
+        }
+        return longs;
+    }
+
+    private class RowView extends AbstractMap<String, Object> {
+        private final int row;
+
+        RowView(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public Object get(Object key) {
+            Integer index = columnIndex.get(key);
+            return index != null ? getObject(row, index) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return columnIndex.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return columnNames.length;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<>() {
+                        private int column = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return column < columnNames.length;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            int current = column++;
+                            return new SimpleImmutableEntry<>(columnNames[current], getObject(row, current));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return columnNames.length;
+                }
+            };
+        }
+    }
+}
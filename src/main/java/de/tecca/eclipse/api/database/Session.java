@@ -0,0 +1,15 @@
+package de.tecca.eclipse.api.database;
+
+import java.util.List;
+import java.util.Map;
+
+public interface Session {
+
+    List<Map<String, Object>> query(String sql, Object... params);
+    <T> List<T> query(Class<T> type, String sql, Object... params);
+    int update(String sql, Object... params);
+    void execute(String sql, Object... params);
+    int[] batch(String sql, List<Object[]> parameterSets);
+
+    boolean isOpen();
+}
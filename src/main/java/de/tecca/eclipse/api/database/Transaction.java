@@ -8,7 +8,7 @@ public interface Transaction {
     Transaction thenQuery(String sql, Object... params);
     Transaction thenUpdate(String sql, Object... params);
 
-    CompletableFuture<Void> commit();
+    CompletableFuture<TransactionResult> commit();
     CompletableFuture<Void> rollback();
 
     boolean isActive();
@@ -0,0 +1,43 @@
+package de.tecca.eclipse.api.database;
+
+import java.util.List;
+import java.util.Map;
+
+public class TransactionResult {
+    private final List<Object> steps;
+    private final int attempts;
+
+    public TransactionResult(List<Object> steps, int attempts) {
+        this.steps = steps;
+        this.attempts = attempts;
+    }
+
+    public int size() { return steps.size(); }
+    public int getAttempts() { return attempts; }
+
+    @SuppressWarnings("unchecked")
+    public List<Map<String, Object>> getRows(int step) {
+        if (!(steps.get(step) instanceof List<?> rows)) {
+            throw new IllegalArgumentException("Step " + step + " is not a query");
+        }
+        return (List<Map<String, Object>>) rows;
+    }
+
+    // Batched steps may report Statement.SUCCESS_NO_INFO when the driver rewrote the batch
+    public int getUpdateCount(int step) {
+        if (!(steps.get(step) instanceof Integer count)) {
+            throw new IllegalArgumentException("Step " + step + " is not an update");
+        }
+        return count;
+    }
+
+    public int getTotalUpdateCount() {
+        int total = 0;
+        for (Object step : steps) {
+            if (step instanceof Integer count && count > 0) {
+                total += count;
+            }
+        }
+        return total;
+    }
+}
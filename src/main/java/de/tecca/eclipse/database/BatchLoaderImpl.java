@@ -0,0 +1,261 @@
+package de.tecca.eclipse.database;
+
+import de.tecca.eclipse.api.database.BatchLoader;
+import de.tecca.eclipse.api.database.QueryBuilder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Collects load(key) calls for a short window and resolves them with one WHERE key IN (...) query.
+// The key column is expected to be unique; if it is not, the first matching row wins.
+//
+// The optional cache keeps found rows only, for at most CACHE_TTL_MILLIS, and drops them as soon as
+// a write through the API invalidates the table in the query cache. Misses are always reloaded.
+// Every caller gets its own copy of the shared future, and rows are read-only, so one caller
+// cannot cancel or change what the others see.
+public class BatchLoaderImpl<K> implements BatchLoader<K, Map<String, Object>> {
+
+    public static final long DEFAULT_WINDOW_MILLIS = 5;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
+    private static final int MAX_CACHED_KEYS = 10_000;
+    private static final long CACHE_TTL_MILLIS = 60_000;
+
+    private final ScheduledExecutorService scheduler;
+    private final Supplier<QueryBuilder> queryFactory;
+    private final QueryCache queryCache;
+    private final String tableName;
+    private final String keyColumn;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final Map<Object, CacheEntry> cache;
+
+    private Map<Object, CompletableFuture<Optional<Map<String, Object>>>> pending = new LinkedHashMap<>();
+    private Map<Object, K> pendingKeys = new HashMap<>();
+    private boolean dispatchScheduled = false;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+
+    public BatchLoaderImpl(ScheduledExecutorService scheduler, Supplier<QueryBuilder> queryFactory, QueryCache queryCache,
+                           String tableName, String keyColumn, long windowMillis, int maxBatchSize, boolean cached) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+
+        this.scheduler = scheduler;
+        this.queryFactory = queryFactory;
+        this.queryCache = queryCache;
+        this.tableName = tableName;
+        this.keyColumn = keyColumn;
+        this.windowMillis = Math.max(0, windowMillis);
+        this.maxBatchSize = maxBatchSize;
+        this.cache = cached ? Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, CacheEntry> eldest) {
+                return size() > MAX_CACHED_KEYS;
+            }
+        }) : null;
+    }
+
+    @Override
+    public CompletableFuture<Optional<Map<String, Object>>> load(K key) {
+        Object normalized = KeyValues.normalize(key);
+        loads.increment();
+
+        long generation = generation();
+        if (cache != null) {
+            CacheEntry entry = cache.get(normalized);
+            if (entry != null) {
+                if (entry.generation == generation && entry.expiresAt - System.nanoTime() > 0) {
+                    return entry.future.copy();
+                }
+                cache.remove(normalized, entry);
+            }
+        }
+
+        CompletableFuture<Optional<Map<String, Object>>> future;
+        boolean dispatchNow = false;
+
+        synchronized (this) {
+            future = pending.get(normalized);
+            if (future != null) {
+                return future.copy();
+            }
+
+            future = new CompletableFuture<>();
+            pending.put(normalized, future);
+            pendingKeys.put(normalized, key);
+            if (cache != null) {
+                cache.put(normalized, new CacheEntry(future, generation, System.nanoTime() + CACHE_TTL_MILLIS * 1_000_000));
+            }
+
+            if (pending.size() >= maxBatchSize) {
+                dispatchNow = true;
+            } else if (!dispatchScheduled) {
+                try {
+                    scheduler.schedule(this::dispatch, windowMillis, TimeUnit.MILLISECONDS);
+                    dispatchScheduled = true;
+                } catch (RejectedExecutionException e) {
+                    // Shut down; nothing else is pending, since no dispatch was scheduled
+                    pending.remove(normalized);
+                    pendingKeys.remove(normalized);
+                    uncache(normalized, future);
+                    future.completeExceptionally(e);
+                }
+            }
+        }
+
+        if (dispatchNow) {
+            dispatch();
+        }
+        return future.copy();
+    }
+
+    @Override
+    public CompletableFuture<Map<K, Map<String, Object>>> loadMany(Collection<K> keys) {
+        Map<K, CompletableFuture<Optional<Map<String, Object>>>> futures = new LinkedHashMap<>();
+        for (K key : keys) {
+            futures.put(key, load(key));
+        }
+
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            Map<K, Map<String, Object>> result = new LinkedHashMap<>();
+            futures.forEach((key, future) -> future.join().ifPresent(row -> result.put(key, row)));
+            return result;
+        });
+    }
+
+    @Override
+    public void invalidate(K key) {
+        if (cache != null) {
+            cache.remove(KeyValues.normalize(key));
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    @Override
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    @Override
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    private void dispatch() {
+        Map<Object, CompletableFuture<Optional<Map<String, Object>>>> batch;
+        Map<Object, K> keys;
+
+        synchronized (this) {
+            dispatchScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            batch = pending;
+            keys = pendingKeys;
+            pending = new LinkedHashMap<>();
+            pendingKeys = new HashMap<>();
+        }
+
+        List<Object> normalizedKeys = new ArrayList<>(batch.keySet());
+        for (int from = 0; from < normalizedKeys.size(); from += maxBatchSize) {
+            List<Object> chunk = normalizedKeys.subList(from, Math.min(from + maxBatchSize, normalizedKeys.size()));
+            Object[] params = new Object[chunk.size()];
+            for (int i = 0; i < params.length; i++) {
+                params[i] = keys.get(chunk.get(i));
+            }
+
+            batches.increment();
+            try {
+                queryFactory.get().whereIn(keyColumn, params).get().whenComplete((rows, error) -> {
+                    if (error != null) {
+                        fail(chunk, batch, error);
+                    } else {
+                        complete(chunk, batch, rows);
+                    }
+                });
+            } catch (RuntimeException e) {
+                fail(chunk, batch, e);
+            }
+        }
+    }
+
+    private void complete(List<Object> chunk, Map<Object, CompletableFuture<Optional<Map<String, Object>>>> batch,
+                          List<Map<String, Object>> rows) {
+        Map<Object, Map<String, Object>> rowsByKey = new HashMap<>();
+        for (Map<String, Object> row : rows) {
+            Object value = row.get(keyColumn);
+            if (value != null) {
+                rowsByKey.putIfAbsent(KeyValues.normalize(value), row);
+            }
+        }
+
+        // A row inserted after this lookup must be found by the next one, so misses are not cached
+        for (Object key : chunk) {
+            Map<String, Object> row = rowsByKey.get(key);
+            if (row == null) {
+                uncache(key, batch.get(key));
+            }
+            batch.get(key).complete(Optional.ofNullable(row).map(Collections::unmodifiableMap));
+        }
+    }
+
+    // Failed loads leave the cache so the next call retries them
+    private void fail(List<Object> chunk, Map<Object, CompletableFuture<Optional<Map<String, Object>>>> batch,
+                      Throwable error) {
+        for (Object key : chunk) {
+            CompletableFuture<Optional<Map<String, Object>>> future = batch.get(key);
+            uncache(key, future);
+            future.completeExceptionally(error);
+        }
+    }
+
+    private void uncache(Object key, CompletableFuture<Optional<Map<String, Object>>> future) {
+        if (cache == null) {
+            return;
+        }
+
+        synchronized (cache) {
+            CacheEntry entry = cache.get(key);
+            if (entry != null && entry.future == future) {
+                cache.remove(key);
+            }
+        }
+    }
+
+    private long generation() {
+        return queryCache != null ? queryCache.generationOf(tableName) : 0;
+    }
+
+    private static class CacheEntry {
+        final CompletableFuture<Optional<Map<String, Object>>> future;
+        final long generation;
+        final long expiresAt;
+
+        CacheEntry(CompletableFuture<Optional<Map<String, Object>>> future, long generation, long expiresAt) {
+            this.future = future;
+            this.generation = generation;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package de.tecca.eclipse.database;
+
+import java.util.Objects;
+
+final class Condition {
+    final String column;
+    final String operator;
+    final int arity;
+
+    Condition(String column, String operator, int arity) {
+        this.column = column;
+        this.operator = operator;
+        this.arity = arity;
+    }
+
+    void appendTo(StringBuilder sql) {
+        sql.append(column).append(' ').append(operator);
+
+        if (arity == 0) {
+            return;
+        }
+
+        if (arity == 1 && !operator.equals("IN")) {
+            sql.append(" ?");
+            return;
+        }
+
+        sql.append(" (");
+        for (int i = 0; i < arity; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append('?');
+        }
+        sql.append(')');
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Condition other)) return false;
+        return arity == other.arity && column.equals(other.column) && operator.equals(other.operator);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(column, operator, arity);
+    }
+}
@@ -2,23 +2,68 @@ package de.tecca.eclipse.database;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import de.tecca.eclipse.api.database.AdmissionStats;
+import de.tecca.eclipse.api.database.OverloadPolicy;
+import de.tecca.eclipse.api.database.QueryPriority;
+import de.tecca.eclipse.api.database.ReplicaRouting;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class ConnectionManager {
 
+    private static final int SQLITE_OPEN_READONLY = 1;
+    private static final long SQLITE_MMAP_SIZE = 256L * 1024 * 1024;
+    private static final long REPLICA_CONNECTION_TIMEOUT_MILLIS = 2000;
+    private static final long REPLICA_COOLDOWN_MILLIS = 30_000;
+    private static final ThreadLocal<Integer> PRIMARY_PINS = ThreadLocal.withInitial(() -> 0);
+    private static final ThreadLocal<Long> QUERY_TIMEOUTS = new ThreadLocal<>();
+    private static final ThreadLocal<QueryPriority> QUERY_PRIORITIES = new ThreadLocal<>();
+
     private final DatabaseProvider provider;
+    private final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Eclipse-DB-Deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
     private HikariDataSource dataSource;
-    private ExecutorService executor;
+    private HikariDataSource readDataSource;
+    private final List<HikariDataSource> replicas = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final Map<HikariDataSource, Long> unhealthyReplicas = new ConcurrentHashMap<>();
+    private volatile ReplicaRouting replicaRouting = ReplicaRouting.ROUND_ROBIN;
+    private volatile DatabaseExecutor executor;
+    private volatile long queryTimeoutMillis = 0;
+    private volatile OverloadPolicy overloadPolicy = OverloadPolicy.REJECT;
+    private final LongAdder timedOutQueries = new LongAdder();
+    private final LongAdder cancelledQueries = new LongAdder();
     private boolean initialized = false;
 
     public ConnectionManager(DatabaseProvider provider) {
+        this(provider, false);
+    }
+
+    public ConnectionManager(DatabaseProvider provider, boolean virtualThreads) {
         this.provider = provider;
-        this.executor = Executors.newCachedThreadPool();
         initialize();
+        this.executor = new DatabaseExecutor("Eclipse-DB", getMaximumPoolSize(), virtualThreads);
     }
 
     private void initialize() {
@@ -31,9 +76,12 @@ public class ConnectionManager {
     }
 
     private void initializeMySQL(MySQLProvider mysqlProvider) {
+        this.dataSource = new HikariDataSource(createMySQLConfig(mysqlProvider, mysqlProvider.getHost(), mysqlProvider.getPort()));
+    }
+
+    private HikariConfig createMySQLConfig(MySQLProvider mysqlProvider, String host, int port) {
         HikariConfig config = new HikariConfig();
-        config.setJdbcUrl("jdbc:mysql://" + mysqlProvider.getHost() + ":" +
-                mysqlProvider.getPort() + "/" + mysqlProvider.getDatabase());
+        config.setJdbcUrl("jdbc:mysql://" + host + ":" + port + "/" + mysqlProvider.getDatabase());
         config.setUsername(mysqlProvider.getUsername());
         config.setPassword(mysqlProvider.getPassword());
         config.setDriverClassName("com.mysql.cj.jdbc.Driver");
@@ -48,8 +96,10 @@ public class ConnectionManager {
         config.addDataSourceProperty("prepStmtCacheSize", "250");
         config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
         config.addDataSourceProperty("useServerPrepStmts", "true");
+        config.addDataSourceProperty("rewriteBatchedStatements", "true");
+        config.addDataSourceProperty("useCursorFetch", "true");
 
-        this.dataSource = new HikariDataSource(config);
+        return config;
     }
 
     private void initializeSQLite(SQLiteProvider sqliteProvider) {
@@ -61,7 +111,274 @@ public class ConnectionManager {
         config.setMinimumIdle(1);
         config.setConnectionTimeout(30000);
 
+        if (sqliteProvider.getReaderConnections() > 0) {
+            configureWal(config);
+        }
+
         this.dataSource = new HikariDataSource(config);
+
+        // The writer opens first so the database is already in WAL mode for the readers
+        if (sqliteProvider.getReaderConnections() > 0) {
+            initializeSQLiteReaders(sqliteProvider);
+        }
+    }
+
+    private void initializeSQLiteReaders(SQLiteProvider sqliteProvider) {
+        this.readDataSource = new HikariDataSource(createSQLiteReaderConfig(sqliteProvider.getFilePath(),
+                "Eclipse-SQLite-Readers", sqliteProvider.getReaderConnections()));
+    }
+
+    private HikariConfig createSQLiteReaderConfig(String filePath, String poolName, int connections) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:sqlite:" + filePath);
+        config.setDriverClassName("org.sqlite.JDBC");
+        config.setPoolName(poolName);
+
+        config.setMaximumPoolSize(connections);
+        config.setMinimumIdle(1);
+        config.setConnectionTimeout(30000);
+
+        config.addDataSourceProperty("open_mode", String.valueOf(SQLITE_OPEN_READONLY));
+        config.addDataSourceProperty("busy_timeout", "5000");
+        config.setConnectionInitSql("PRAGMA mmap_size = " + SQLITE_MMAP_SIZE);
+
+        return config;
+    }
+
+    // Replicas only serve reads; they are expected to be kept in sync by the database, not by us
+    public void addMySQLReplica(String host, int port) {
+        if (!(provider instanceof MySQLProvider mysqlProvider)) {
+            throw new IllegalStateException("MySQL replicas require a MySQL primary");
+        }
+
+        HikariConfig config = createMySQLConfig(mysqlProvider, host, port);
+        config.setPoolName("Eclipse-MySQL-Replica-" + replicas.size());
+        config.setReadOnly(true);
+        config.setConnectionTimeout(REPLICA_CONNECTION_TIMEOUT_MILLIS);
+        addReplica(new HikariDataSource(config));
+    }
+
+    // A read-only SQLite file standing in for a replica, mainly for local testing
+    public void addSQLiteReplica(String filePath, int connections) {
+        if (!(provider instanceof SQLiteProvider)) {
+            throw new IllegalStateException("SQLite replicas require a SQLite primary");
+        }
+
+        HikariConfig config = createSQLiteReaderConfig(filePath, "Eclipse-SQLite-Replica-" + replicas.size(), connections);
+        config.setConnectionTimeout(REPLICA_CONNECTION_TIMEOUT_MILLIS);
+        addReplica(new HikariDataSource(config));
+    }
+
+    private void addReplica(HikariDataSource replica) {
+        replicas.add(replica);
+        executor.resize(getMaximumPoolSize());
+    }
+
+    public void setReplicaRouting(ReplicaRouting replicaRouting) {
+        this.replicaRouting = replicaRouting;
+    }
+
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    // Reads issued by the calling thread inside work go to the primary, for read-your-writes.
+    // Providers capture the pin when a query is submitted, before it moves to the executor.
+    public static <T> T onPrimary(Supplier<T> work) {
+        PRIMARY_PINS.set(PRIMARY_PINS.get() + 1);
+        try {
+            return work.get();
+        } finally {
+            int pins = PRIMARY_PINS.get() - 1;
+            if (pins == 0) {
+                PRIMARY_PINS.remove();
+            } else {
+                PRIMARY_PINS.set(pins);
+            }
+        }
+    }
+
+    public static boolean isPinnedToPrimary() {
+        return PRIMARY_PINS.get() > 0;
+    }
+
+    // Queries submitted by the calling thread inside work get this deadline instead of the default.
+    // Like the primary pin, providers capture it when a query is submitted.
+    public static <T> T withQueryTimeout(long timeoutMillis, Supplier<T> work) {
+        Long previous = QUERY_TIMEOUTS.get();
+        QUERY_TIMEOUTS.set(timeoutMillis);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                QUERY_TIMEOUTS.remove();
+            } else {
+                QUERY_TIMEOUTS.set(previous);
+            }
+        }
+    }
+
+    // Queries submitted by the calling thread inside work are queued with this priority instead of
+    // the provider's default: INTERACTIVE for reads, NORMAL for writes.
+    public static <T> T withPriority(QueryPriority priority, Supplier<T> work) {
+        QueryPriority previous = QUERY_PRIORITIES.get();
+        QUERY_PRIORITIES.set(priority);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                QUERY_PRIORITIES.remove();
+            } else {
+                QUERY_PRIORITIES.set(previous);
+            }
+        }
+    }
+
+    public void setQueryTimeout(long timeoutMillis) {
+        this.queryTimeoutMillis = Math.max(0, timeoutMillis);
+    }
+
+    public long getQueryTimeout() {
+        return queryTimeoutMillis;
+    }
+
+    // Runs a query task on the executor under the caller's deadline. Once the deadline passes or
+    // the returned future is cancelled the running statement is cancelled, and a task still queued
+    // never borrows a connection at all.
+    public <T> CompletableFuture<T> supply(Function<StatementGuard, T> task) {
+        return supply(QueryPriority.NORMAL, task);
+    }
+
+    public <T> CompletableFuture<T> supply(QueryPriority defaultPriority, Function<StatementGuard, T> task) {
+        QueryPriority priority = currentPriority(defaultPriority);
+        long timeoutMillis = currentQueryTimeout();
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        StatementGuard guard = new StatementGuard(timeoutMillis, provider instanceof MySQLProvider);
+
+        ScheduledFuture<?> deadline;
+        try {
+            deadline = timeoutMillis <= 0 ? null : deadlines.schedule(() -> {
+                if (future.completeExceptionally(new TimeoutException("Query exceeded its deadline of " + timeoutMillis + " ms"))) {
+                    timedOutQueries.increment();
+                    guard.abort();
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        future.whenComplete((result, error) -> {
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+            if (error instanceof CancellationException) {
+                cancelledQueries.increment();
+                guard.abort();
+            }
+        });
+
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+
+                try {
+                    future.complete(task.apply(guard));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    guard.release();
+                }
+            }, priority, future::completeExceptionally);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    // Captures the calling thread's primary pin, deadline and priority, for work that is started
+    // later from another thread but should be submitted as if the caller had done it
+    static Scope captureScope() {
+        return new Scope(isPinnedToPrimary(), QUERY_TIMEOUTS.get(), QUERY_PRIORITIES.get());
+    }
+
+    // The priority and deadline supply() would give a query submitted from the calling thread
+    static QueryPriority currentPriority(QueryPriority defaultPriority) {
+        QueryPriority requested = QUERY_PRIORITIES.get();
+        return requested != null ? requested : defaultPriority;
+    }
+
+    long currentQueryTimeout() {
+        Long requested = QUERY_TIMEOUTS.get();
+        return requested != null ? requested : queryTimeoutMillis;
+    }
+
+    public CompletableFuture<Void> run(Consumer<StatementGuard> task) {
+        return supply(guard -> {
+            task.accept(guard);
+            return null;
+        });
+    }
+
+    public void setOverloadPolicy(OverloadPolicy overloadPolicy) {
+        this.overloadPolicy = overloadPolicy;
+        executor.setOverloadPolicy(overloadPolicy);
+    }
+
+    public boolean isOverloaded() {
+        return executor.isOverloaded();
+    }
+
+    public AdmissionStats getAdmissionStats() {
+        DatabaseExecutor current = executor;
+        return new AdmissionStats(
+                current.getQueueDepth(),
+                current.getQueueCapacity(),
+                current.getQueueDepth(QueryPriority.INTERACTIVE),
+                current.getQueueDepth(QueryPriority.NORMAL),
+                current.getQueueDepth(QueryPriority.BACKGROUND),
+                current.getExecutedTasks(),
+                current.getRejectedTasks(),
+                current.getShedTasks(),
+                current.getCallerRunsTasks(),
+                current.getAverageWaitMillis(),
+                current.getMaxWaitMillis());
+    }
+
+    public long getTimedOutQueries() {
+        return timedOutQueries.sum();
+    }
+
+    public long getCancelledQueries() {
+        return cancelledQueries.sum();
+    }
+
+    static final class Scope {
+        private final boolean primary;
+        private final Long timeoutMillis;
+        private final QueryPriority priority;
+
+        private Scope(boolean primary, Long timeoutMillis, QueryPriority priority) {
+            this.primary = primary;
+            this.timeoutMillis = timeoutMillis;
+            this.priority = priority;
+        }
+
+        <T> T apply(Supplier<T> work) {
+            Supplier<T> timed = timeoutMillis != null ? () -> withQueryTimeout(timeoutMillis, work) : work;
+            Supplier<T> prioritized = priority != null ? () -> withPriority(priority, timed) : timed;
+            return primary ? onPrimary(prioritized) : prioritized.get();
+        }
+    }
+
+    private void configureWal(HikariConfig config) {
+        config.addDataSourceProperty("journal_mode", "WAL");
+        config.addDataSourceProperty("synchronous", "NORMAL");
+        config.addDataSourceProperty("busy_timeout", "5000");
+        config.setConnectionInitSql("PRAGMA mmap_size = " + SQLITE_MMAP_SIZE);
     }
 
     public Connection getConnection() throws SQLException {
@@ -71,20 +388,114 @@ public class ConnectionManager {
         return dataSource.getConnection();
     }
 
+    public Connection getReadConnection() throws SQLException {
+        return getReadConnection(false);
+    }
+
+    // Replica if any are configured, then the SQLite reader pool, then the primary.
+    // An unreachable replica falls back to the primary instead of failing the read, and is
+    // skipped for REPLICA_COOLDOWN_MILLIS so later reads don't wait on it again.
+    public Connection getReadConnection(boolean primary) throws SQLException {
+        if (!primary && !replicas.isEmpty()) {
+            HikariDataSource replica = chooseReplica();
+            if (replica == null) {
+                return getConnection();
+            }
+
+            try {
+                Connection connection = replica.getConnection();
+                unhealthyReplicas.remove(replica);
+                return connection;
+            } catch (SQLException e) {
+                unhealthyReplicas.put(replica, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(REPLICA_COOLDOWN_MILLIS));
+                return getConnection();
+            }
+        }
+
+        if (primary || readDataSource == null) {
+            return getConnection();
+        }
+        return readDataSource.getConnection();
+    }
+
+    // Null when every replica is cooling down after a failed connection attempt
+    private HikariDataSource chooseReplica() {
+        List<HikariDataSource> candidates = healthyReplicas();
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        if (replicaRouting == ReplicaRouting.ROUND_ROBIN || candidates.size() == 1) {
+            return candidates.get(Math.floorMod(nextReplica.getAndIncrement(), candidates.size()));
+        }
+
+        HikariDataSource best = candidates.get(0);
+        int bestActive = Integer.MAX_VALUE;
+        for (HikariDataSource candidate : candidates) {
+            int active = candidate.getHikariPoolMXBean().getActiveConnections();
+            if (active < bestActive) {
+                best = candidate;
+                bestActive = active;
+            }
+        }
+        return best;
+    }
+
+    private List<HikariDataSource> healthyReplicas() {
+        if (unhealthyReplicas.isEmpty()) {
+            return replicas;
+        }
+
+        long now = System.nanoTime();
+        List<HikariDataSource> healthy = new ArrayList<>(replicas.size());
+        for (HikariDataSource replica : replicas) {
+            Long until = unhealthyReplicas.get(replica);
+            if (until == null || until - now <= 0) {
+                healthy.add(replica);
+            }
+        }
+        return healthy;
+    }
+
+    public boolean hasReadPool() {
+        return readDataSource != null || !replicas.isEmpty();
+    }
+
     public CompletableFuture<Connection> getConnectionAsync() {
-        return CompletableFuture.supplyAsync(() -> {
+        return executor.supply(() -> {
             try {
                 return getConnection();
             } catch (SQLException e) {
                 throw new RuntimeException(e);
             }
-        }, executor);
+        });
+    }
+
+    public DatabaseExecutor getExecutor() {
+        return executor;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        if (executor.isVirtualThreads() == virtualThreads) {
+            return;
+        }
+
+        DatabaseExecutor previous = executor;
+        DatabaseExecutor next = new DatabaseExecutor("Eclipse-DB", getMaximumPoolSize(), virtualThreads);
+        next.setOverloadPolicy(overloadPolicy);
+        this.executor = next;
+        previous.shutdown();
     }
 
     public void setPoolSize(int minConnections, int maxConnections) {
-        if (dataSource != null) {
+        // The SQLite writer stays a single connection; only the reader pool is resized
+        if (readDataSource != null) {
+            readDataSource.setMinimumIdle(minConnections);
+            readDataSource.setMaximumPoolSize(maxConnections);
+            executor.resize(getMaximumPoolSize());
+        } else if (dataSource != null) {
             dataSource.setMinimumIdle(minConnections);
             dataSource.setMaximumPoolSize(maxConnections);
+            executor.resize(maxConnections);
         }
     }
 
@@ -98,20 +509,72 @@ public class ConnectionManager {
         }
     }
 
+    public int getMaximumPoolSize() {
+        int size = dataSource != null ? dataSource.getMaximumPoolSize() : 1;
+        if (readDataSource != null) {
+            size += readDataSource.getMaximumPoolSize();
+        }
+        for (HikariDataSource replica : replicas) {
+            size += replica.getMaximumPoolSize();
+        }
+        return size;
+    }
+
+    public StatementCache getStatementCache() {
+        return provider instanceof SQLiteProvider sqliteProvider ? sqliteProvider.getStatementCache() : null;
+    }
+
     public int getActiveConnections() {
-        return dataSource != null ? dataSource.getHikariPoolMXBean().getActiveConnections() : 0;
+        int active = dataSource != null ? dataSource.getHikariPoolMXBean().getActiveConnections() : 0;
+        if (readDataSource != null) {
+            active += readDataSource.getHikariPoolMXBean().getActiveConnections();
+        }
+        for (HikariDataSource replica : replicas) {
+            active += replica.getHikariPoolMXBean().getActiveConnections();
+        }
+        return active;
     }
 
     public int getIdleConnections() {
-        return dataSource != null ? dataSource.getHikariPoolMXBean().getIdleConnections() : 0;
+        int idle = dataSource != null ? dataSource.getHikariPoolMXBean().getIdleConnections() : 0;
+        if (readDataSource != null) {
+            idle += readDataSource.getHikariPoolMXBean().getIdleConnections();
+        }
+        for (HikariDataSource replica : replicas) {
+            idle += replica.getHikariPoolMXBean().getIdleConnections();
+        }
+        return idle;
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueueDepth();
+    }
+
+    public double getAverageQueueWaitMillis() {
+        return executor.getAverageWaitMillis();
+    }
+
+    public double getMaxQueueWaitMillis() {
+        return executor.getMaxWaitMillis();
+    }
+
+    public long getRejectedTasks() {
+        return executor.getRejectedTasks();
     }
 
     public void shutdown() {
-        if (dataSource != null) {
-            dataSource.close();
-        }
         if (executor != null) {
             executor.shutdown();
         }
+        deadlines.shutdownNow();
+        for (HikariDataSource replica : replicas) {
+            replica.close();
+        }
+        if (readDataSource != null) {
+            readDataSource.close();
+        }
+        if (dataSource != null) {
+            dataSource.close();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,192 @@
+package de.tecca.eclipse.database;
+
+import de.tecca.eclipse.api.database.Counter;
+import de.tecca.eclipse.api.database.Transaction;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+// Accumulates deltas per key in memory and writes the net change as UPDATE ... SET col = col + ?
+// once per flush interval, all keys in one transaction (one per shard on a sharded provider).
+//
+// Crash window: deltas live only in memory until the next flush, so a crash or kill loses at most
+// one interval of increments. A failed transaction rolls back as a whole and its deltas are added back,
+// so a delta is never applied twice. Keys without a row are not created; the update matches nothing.
+public class CounterImpl implements Counter {
+
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+    private final Supplier<DatabaseProvider> provider;
+    private final QueryCache queryCache;
+    private final Logger logger;
+    private final String tableName;
+    private final String keyColumn;
+    private final String sql;
+
+    // Slots idle for a whole flush interval are removed; add() re-checks for that race
+    private final Map<Object, Slot> slots = new ConcurrentHashMap<>();
+    private final ScheduledFuture<?> flushTask;
+
+    public CounterImpl(ScheduledExecutorService scheduler, Supplier<DatabaseProvider> provider, QueryCache queryCache,
+                       Logger logger, String tableName, String keyColumn, String valueColumn, long flushIntervalMillis) {
+        this.provider = provider;
+        this.queryCache = queryCache;
+        this.logger = logger;
+        this.tableName = tableName;
+        this.keyColumn = keyColumn;
+        this.sql = "UPDATE " + tableName + " SET " + valueColumn + " = " + valueColumn + " + ? WHERE " + keyColumn + " = ?";
+        this.flushTask = scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void increment(Object key) {
+        add(key, 1);
+    }
+
+    @Override
+    public void decrement(Object key) {
+        add(key, -1);
+    }
+
+    @Override
+    public void add(Object key, long delta) {
+        Object normalized = KeyValues.normalize(key);
+        Slot slot = slots.computeIfAbsent(normalized, k -> new Slot(key));
+        slot.delta.add(delta);
+
+        // The slot was pruned in between, so whatever landed on it is moved to the live slot.
+        // Every add to a pruned slot ends in such a sweep, so no delta is left behind.
+        if (slots.get(normalized) != slot) {
+            long moved = slot.delta.sumThenReset();
+            if (moved != 0) {
+                add(key, moved);
+            }
+        }
+    }
+
+    @Override
+    public long getPending(Object key) {
+        Slot slot = slots.get(KeyValues.normalize(key));
+        return slot != null ? slot.delta.sum() : 0;
+    }
+
+    // sumThenReset swaps each cell to zero, so adds racing with a flush land in the next one
+    @Override
+    public synchronized CompletableFuture<Void> flush() {
+        List<Slot> flushed = new ArrayList<>();
+        List<Long> deltas = new ArrayList<>();
+
+        for (Map.Entry<Object, Slot> entry : slots.entrySet()) {
+            Slot slot = entry.getValue();
+            long delta = slot.delta.sumThenReset();
+            if (delta != 0) {
+                flushed.add(slot);
+                deltas.add(delta);
+            } else if (slots.remove(entry.getKey(), slot)) {
+                long late = slot.delta.sumThenReset();
+                if (late != 0) {
+                    add(slot.key, late);
+                }
+            }
+        }
+
+        if (flushed.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Sharded tables commit one transaction per shard; a failing shard only re-queues its own deltas
+        Map<DatabaseProvider, List<Integer>> groups = new LinkedHashMap<>();
+        try {
+            DatabaseProvider target = provider.get();
+            for (int i = 0; i < flushed.size(); i++) {
+                groups.computeIfAbsent(shardOf(target, flushed.get(i).key), shard -> new ArrayList<>()).add(i);
+            }
+        } catch (RuntimeException e) {
+            requeue(flushed, deltas, allIndices(flushed.size()), e);
+            return CompletableFuture.failedFuture(e);
+        }
+
+        List<CompletableFuture<Void>> commits = new ArrayList<>();
+        for (Map.Entry<DatabaseProvider, List<Integer>> group : groups.entrySet()) {
+            commits.add(commit(group.getKey(), group.getValue(), flushed, deltas));
+        }
+        return CompletableFuture.allOf(commits.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private CompletableFuture<Void> commit(DatabaseProvider shard, List<Integer> indices, List<Slot> flushed, List<Long> deltas) {
+        CompletableFuture<Void> commit;
+        try {
+            Transaction transaction = shard.beginTransaction();
+            for (int i : indices) {
+                transaction.thenUpdate(sql, deltas.get(i), flushed.get(i).key);
+            }
+            commit = transaction.commit().thenApply(result -> null);
+        } catch (RuntimeException e) {
+            commit = CompletableFuture.failedFuture(e);
+        }
+
+        return commit.whenComplete((result, error) -> {
+            if (error != null) {
+                requeue(flushed, deltas, indices, error);
+            } else if (queryCache != null) {
+                queryCache.invalidate(tableName);
+            }
+        });
+    }
+
+    private DatabaseProvider shardOf(DatabaseProvider target, Object key) {
+        if (!(target instanceof ShardedProvider sharded)) {
+            return target;
+        }
+
+        DatabaseProvider shard = sharded.routeKey(tableName, keyColumn, key);
+        if (shard == null) {
+            throw new IllegalStateException("Counter key " + keyColumn + " is not the shard key of " + tableName);
+        }
+        return shard;
+    }
+
+    private void requeue(List<Slot> flushed, List<Long> deltas, List<Integer> indices, Throwable error) {
+        // Through add(), since the slot may have been pruned while the transaction ran
+        for (int i : indices) {
+            add(flushed.get(i).key, deltas.get(i));
+        }
+        logger.warning("Counter flush for " + tableName + " failed, " + indices.size() + " deltas re-queued: " + error.getMessage());
+    }
+
+    private static List<Integer> allIndices(int size) {
+        List<Integer> indices = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            indices.add(i);
+        }
+        return indices;
+    }
+
+    public void shutdown() {
+        flushTask.cancel(false);
+
+        try {
+            flush().get(30, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            logger.severe("Counter deltas for " + tableName + " could not be flushed on shutdown: " + e.getMessage());
+        }
+    }
+
+    private static class Slot {
+        final Object key;
+        final LongAdder delta = new LongAdder();
+
+        Slot(Object key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package de.tecca.eclipse.database;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+
+// Continuation token for keyset pagination: the sort key of the last row of a page
+final class Cursor {
+    final String orderColumn;
+    final String tiebreakerColumn;
+    final Object orderValue;
+    final Object tiebreakerValue;
+
+    Cursor(String orderColumn, String tiebreakerColumn, Object orderValue, Object tiebreakerValue) {
+        this.orderColumn = orderColumn;
+        this.tiebreakerColumn = tiebreakerColumn;
+        this.orderValue = orderValue;
+        this.tiebreakerValue = tiebreakerValue;
+    }
+
+    String encode() {
+        String raw = String.join("\n", orderColumn, tiebreakerColumn, encodeValue(orderValue), encodeValue(tiebreakerValue));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Cursor decode(String token, String orderColumn, String tiebreakerColumn) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\n", -1);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed pagination token", e);
+        }
+
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Malformed pagination token");
+        }
+        if (!parts[0].equals(orderColumn) || !parts[1].equals(tiebreakerColumn)) {
+            throw new IllegalArgumentException("Pagination token was issued for ORDER BY " + parts[0] + ", " + parts[1]);
+        }
+
+        return new Cursor(parts[0], parts[1], decodeValue(parts[2]), decodeValue(parts[3]));
+    }
+
+    // The type tag keeps longs and DECIMALs exact and timestamps comparable when the value is bound again
+    private static String encodeValue(Object value) {
+        if (value == null) {
+            throw new IllegalStateException("Cannot paginate over NULL sort keys");
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return "L" + value;
+        }
+        if (value instanceof BigDecimal || value instanceof BigInteger) {
+            return "B" + (value instanceof BigDecimal decimal ? decimal.toPlainString() : value);
+        }
+        if (value instanceof Number number) {
+            return "D" + number.doubleValue();
+        }
+        if (value instanceof Timestamp timestamp) {
+            return "T" + timestamp.getTime();
+        }
+        return "S" + Base64.getUrlEncoder().withoutPadding().encodeToString(value.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Object decodeValue(String encoded) {
+        if (encoded.isEmpty()) {
+            throw new IllegalArgumentException("Malformed pagination token");
+        }
+
+        String value = encoded.substring(1);
+        try {
+            return switch (encoded.charAt(0)) {
+                case 'L' -> Long.parseLong(value);
+                case 'B' -> new BigDecimal(value);
+                case 'D' -> Double.parseDouble(value);
+                case 'T' -> new Timestamp(Long.parseLong(value));
+                case 'S' -> new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+                default -> throw new IllegalArgumentException("Malformed pagination token");
+            };
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed pagination token", e);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package de.tecca.eclipse.database;
+
+import de.tecca.eclipse.api.database.OverloadPolicy;
+import de.tecca.eclipse.api.database.QueryPriority;
+import java.lang.reflect.Method;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+public class DatabaseExecutor implements Executor {
+
+    private static final int QUEUE_CAPACITY_PER_CONNECTION = 500;
+
+    private final String name;
+    private final boolean virtualThreads;
+    private final int queueCapacity;
+    private final ThreadPoolExecutor platformExecutor;
+    private final ExecutorService virtualExecutor;
+    private final Semaphore virtualPermits;
+    private volatile OverloadPolicy overloadPolicy = OverloadPolicy.REJECT;
+
+    // Waiting tasks are ordered by priority, then submission order, on both thread models
+    private final BlockingQueue<Runnable> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger[] pendingByPriority = new AtomicInteger[QueryPriority.values().length];
+    private final LongAdder executedTasks = new LongAdder();
+    private final LongAdder rejectedTasks = new LongAdder();
+    private final LongAdder shedTasks = new LongAdder();
+    private final LongAdder callerRunsTasks = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public DatabaseExecutor(String name, int poolSize, boolean virtualThreads) {
+        this.name = name;
+        this.queueCapacity = Math.max(1, poolSize) * QUEUE_CAPACITY_PER_CONNECTION;
+        for (int i = 0; i < pendingByPriority.length; i++) {
+            pendingByPriority[i] = new AtomicInteger();
+        }
+
+        ExecutorService virtual = virtualThreads ? createVirtualExecutor() : null;
+        this.virtualThreads = virtual != null;
+
+        if (this.virtualThreads) {
+            this.virtualExecutor = virtual;
+            this.virtualPermits = new Semaphore(Math.max(1, poolSize));
+            this.platformExecutor = null;
+        } else {
+            this.virtualExecutor = null;
+            this.virtualPermits = null;
+            this.platformExecutor = new ThreadPoolExecutor(
+                    Math.max(1, poolSize), Math.max(1, poolSize),
+                    60L, TimeUnit.SECONDS,
+                    queue,
+                    new DatabaseThreadFactory(name),
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        return findVirtualExecutorFactory() != null;
+    }
+
+    public <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, this);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public CompletableFuture<Void> run(Runnable runnable) {
+        try {
+            return CompletableFuture.runAsync(runnable, this);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        execute(task, QueryPriority.NORMAL, null);
+    }
+
+    // onShed is told when the SHED policy drops this task from the queue to admit more urgent
+    // work; tasks without it are never shed.
+    public void execute(Runnable task, QueryPriority priority, Consumer<RejectedExecutionException> onShed) {
+        if (pending.incrementAndGet() > queueCapacity && !(overloadPolicy == OverloadPolicy.SHED && shedBelow(priority))) {
+            pending.decrementAndGet();
+
+            if (overloadPolicy == OverloadPolicy.CALLER_RUNS) {
+                callerRunsTasks.increment();
+                task.run();
+                return;
+            }
+
+            rejectedTasks.increment();
+            throw new RejectedExecutionException("Database queue of " + name + " is full (" + queueCapacity + " tasks)");
+        }
+
+        QueuedTask queued = new QueuedTask(task, priority, onShed);
+        pendingByPriority[priority.ordinal()].incrementAndGet();
+
+        try {
+            if (virtualThreads) {
+                queue.add(queued);
+                virtualExecutor.execute(this::runNextVirtual);
+            } else {
+                platformExecutor.execute(queued);
+            }
+        } catch (RejectedExecutionException e) {
+            queue.remove(queued);
+            pending.decrementAndGet();
+            pendingByPriority[priority.ordinal()].decrementAndGet();
+            rejectedTasks.increment();
+            throw e;
+        }
+    }
+
+    // Each virtual thread runs whichever queued task is most urgent once it gets a permit
+    private void runNextVirtual() {
+        virtualPermits.acquireUninterruptibly();
+        try {
+            Runnable next = queue.poll();
+            if (next != null) {
+                next.run();
+            }
+        } finally {
+            virtualPermits.release();
+        }
+    }
+
+    // Drops the least urgent, most recently queued sheddable task below the given priority.
+    // The caller's slot is kept, since the shed task frees one.
+    private boolean shedBelow(QueryPriority priority) {
+        QueuedTask victim = null;
+        for (Runnable runnable : queue) {
+            QueuedTask candidate = (QueuedTask) runnable;
+            if (candidate.onShed != null && candidate.priority.compareTo(priority) > 0
+                    && (victim == null || candidate.compareTo(victim) > 0)) {
+                victim = candidate;
+            }
+        }
+
+        if (victim == null || !queue.remove(victim)) {
+            return false;
+        }
+
+        pending.decrementAndGet();
+        pendingByPriority[victim.priority.ordinal()].decrementAndGet();
+        shedTasks.increment();
+        victim.onShed.accept(new RejectedExecutionException("Shed from the database queue of " + name + " for more urgent work"));
+        return true;
+    }
+
+    public void resize(int poolSize) {
+        int size = Math.max(1, poolSize);
+
+        if (platformExecutor != null) {
+            if (size > platformExecutor.getMaximumPoolSize()) {
+                platformExecutor.setMaximumPoolSize(size);
+                platformExecutor.setCorePoolSize(size);
+            } else {
+                platformExecutor.setCorePoolSize(size);
+                platformExecutor.setMaximumPoolSize(size);
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        return pending.get();
+    }
+
+    public int getQueueDepth(QueryPriority priority) {
+        return pendingByPriority[priority.ordinal()].get();
+    }
+
+    // Cheap check callers can make before submitting optional work
+    public boolean isOverloaded() {
+        return pending.get() >= queueCapacity;
+    }
+
+    public void setOverloadPolicy(OverloadPolicy overloadPolicy) {
+        this.overloadPolicy = overloadPolicy;
+    }
+
+    public OverloadPolicy getOverloadPolicy() {
+        return overloadPolicy;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getExecutedTasks() {
+        return executedTasks.sum();
+    }
+
+    public long getRejectedTasks() {
+        return rejectedTasks.sum();
+    }
+
+    public long getShedTasks() {
+        return shedTasks.sum();
+    }
+
+    public long getCallerRunsTasks() {
+        return callerRunsTasks.sum();
+    }
+
+    public double getAverageWaitMillis() {
+        long executed = executedTasks.sum();
+        return executed == 0 ? 0.0 : totalWaitNanos.sum() / (double) executed / 1_000_000.0;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void shutdown() {
+        ExecutorService executor = virtualThreads ? virtualExecutor : platformExecutor;
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ExecutorService createVirtualExecutor() {
+        Method factory = findVirtualExecutorFactory();
+        if (factory == null) {
+            return null;
+        }
+
+        try {
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    // Looked up reflectively so the framework still runs on Java 17
+    private static Method findVirtualExecutorFactory() {
+        try {
+            return java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private class QueuedTask implements Runnable, Comparable<QueuedTask> {
+        final Runnable task;
+        final QueryPriority priority;
+        final Consumer<RejectedExecutionException> onShed;
+        final long order = sequence.getAndIncrement();
+        final long enqueuedAt = System.nanoTime();
+
+        QueuedTask(Runnable task, QueryPriority priority, Consumer<RejectedExecutionException> onShed) {
+            this.task = task;
+            this.priority = priority;
+            this.onShed = onShed;
+        }
+
+        @Override
+        public void run() {
+            long waited = System.nanoTime() - enqueuedAt;
+            pending.decrementAndGet();
+            pendingByPriority[priority.ordinal()].decrementAndGet();
+            totalWaitNanos.add(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            executedTasks.increment();
+            task.run();
+        }
+
+        @Override
+        public int compareTo(QueuedTask other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(order, other.order);
+        }
+    }
+
+    private static class DatabaseThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        DatabaseThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -1,15 +1,25 @@
 package de.tecca.eclipse.database;
 
+import de.tecca.eclipse.api.database.RowSet;
+import de.tecca.eclipse.api.database.Session;
 import de.tecca.eclipse.api.database.Transaction;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.List;
 import java.util.Map;
 
 public interface DatabaseProvider {
     CompletableFuture<List<Map<String, Object>>> query(String sql, Object... params);
+    CompletableFuture<RowSet> queryRowSet(String sql, Object... params);
+    <T> CompletableFuture<List<T>> queryAs(Class<T> type, String sql, Object... params);
     CompletableFuture<Integer> update(String sql, Object... params);
     CompletableFuture<Void> execute(String sql, Object... params);
+    CompletableFuture<Long> stream(String sql, Object[] params, int fetchSize, Consumer<Map<String, Object>> rowConsumer);
+    CompletableFuture<int[]> batch(String sql, List<Object[]> parameterSets, int chunkSize);
     Transaction beginTransaction();
+    <T> CompletableFuture<T> withSession(Function<Session, T> work);
+    SqlDialect getDialect();
     boolean isConnected();
     void shutdown();
 }
\ No newline at end of file
@@ -0,0 +1,305 @@
+package de.tecca.eclipse.database;
+
+import de.tecca.eclipse.api.database.GroupCommitStats;
+import de.tecca.eclipse.api.database.OverloadPolicy;
+import de.tecca.eclipse.api.database.QueryPriority;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Groups are committed one at a time through the ConnectionManager, so they queue behind other
+// work at the most urgent priority of their writes. The scheduler only times the flush window.
+// Each write keeps its caller's deadline and can be cancelled until its group reaches it.
+public class GroupCommitWriter {
+
+    private final ConnectionManager connectionManager;
+    private final StatementCache statementCache;
+    private final long flushWindowMillis;
+    private final int maxGroupSize;
+
+    private final Queue<PendingWrite> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean committing = new AtomicBoolean(false);
+    private final ScheduledExecutorService scheduler;
+    private volatile CompletableFuture<Void> inFlight;
+    private volatile boolean running = true;
+
+    private final long startedAt = System.nanoTime();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder failedWrites = new LongAdder();
+
+    public GroupCommitWriter(ConnectionManager connectionManager, StatementCache statementCache,
+                             long flushWindowMillis, int maxGroupSize) {
+        if (maxGroupSize <= 0) {
+            throw new IllegalArgumentException("Group size must be positive");
+        }
+
+        this.connectionManager = connectionManager;
+        this.statementCache = statementCache;
+        this.flushWindowMillis = Math.max(0, flushWindowMillis);
+        this.maxGroupSize = maxGroupSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Eclipse-SQLite-GroupCommit");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<Integer> submit(String sql, Object[] params) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Group commit writer is shut down"));
+        }
+
+        long timeoutMillis = connectionManager.currentQueryTimeout();
+        PendingWrite write = new PendingWrite(sql, params, ConnectionManager.currentPriority(QueryPriority.NORMAL),
+                timeoutMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0);
+
+        // The queue is bounded like the executor's and overflows under the same policy
+        DatabaseExecutor executor = connectionManager.getExecutor();
+        OverloadPolicy policy = executor.getOverloadPolicy();
+        if (pending.incrementAndGet() > executor.getQueueCapacity() && !(policy == OverloadPolicy.SHED && shedBelow(write.priority))) {
+            pending.decrementAndGet();
+
+            if (policy == OverloadPolicy.CALLER_RUNS) {
+                commitGroup(List.of(write));
+                return write.future;
+            }
+            failedWrites.increment();
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "Group commit queue is full (" + executor.getQueueCapacity() + " writes)"));
+        }
+        queue.add(write);
+
+        if (pending.get() >= maxGroupSize) {
+            flush();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.schedule(this::flush, flushWindowMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);
+                flush();
+            }
+        }
+
+        return write.future;
+    }
+
+    // Drops the least urgent, most recently queued write below the given priority
+    private boolean shedBelow(QueryPriority priority) {
+        PendingWrite victim = null;
+        for (PendingWrite candidate : queue) {
+            if (candidate.priority.compareTo(priority) > 0 && (victim == null || candidate.priority.compareTo(victim.priority) >= 0)) {
+                victim = candidate;
+            }
+        }
+
+        if (victim == null || !queue.remove(victim)) {
+            return false;
+        }
+
+        pending.decrementAndGet();
+        failedWrites.increment();
+        victim.future.completeExceptionally(new RejectedExecutionException("Shed from the group commit queue for more urgent work"));
+        return true;
+    }
+
+    // Only one group is in flight; when it finishes it starts the next one from the queue
+    private void flush() {
+        flushScheduled.set(false);
+
+        while (!queue.isEmpty() && committing.compareAndSet(false, true)) {
+            List<PendingWrite> group = new ArrayList<>(maxGroupSize);
+            PendingWrite write;
+            while (group.size() < maxGroupSize && (write = queue.poll()) != null) {
+                pending.decrementAndGet();
+                group.add(write);
+            }
+
+            if (group.isEmpty()) {
+                committing.set(false);
+                continue;
+            }
+
+            CompletableFuture<Void> commit = submitGroup(group);
+            inFlight = commit;
+            commit.whenComplete((done, error) -> {
+                committing.set(false);
+                flush();
+            });
+            return;
+        }
+    }
+
+    private CompletableFuture<Void> submitGroup(List<PendingWrite> group) {
+        QueryPriority priority = QueryPriority.BACKGROUND;
+        for (PendingWrite write : group) {
+            if (write.priority.compareTo(priority) < 0) {
+                priority = write.priority;
+            }
+        }
+
+        // Deadlines are per write, checked in commitGroup(), so the group itself runs without one
+        QueryPriority groupPriority = priority;
+        return ConnectionManager.withQueryTimeout(0, () -> ConnectionManager.withPriority(groupPriority,
+                () -> connectionManager.run(guard -> commitGroup(group)))).handle((done, error) -> {
+            if (error != null) {
+                for (PendingWrite write : group) {
+                    if (write.future.completeExceptionally(error)) {
+                        failedWrites.increment();
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    // Each write gets its own savepoint so a failing statement only fails its own future.
+    // Writes already cancelled by their caller are skipped, and expired ones fail without running.
+    private void commitGroup(List<PendingWrite> group) {
+        int[] counts = new int[group.size()];
+        SQLException[] failures = new SQLException[group.size()];
+
+        try (Connection conn = connectionManager.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try {
+                for (int i = 0; i < group.size(); i++) {
+                    PendingWrite write = group.get(i);
+                    if (write.future.isDone()) {
+                        continue;
+                    }
+                    if (write.deadlineNanos != 0 && write.deadlineNanos - System.nanoTime() <= 0) {
+                        failures[i] = new SQLTimeoutException("Query deadline passed before it started");
+                        continue;
+                    }
+                    Savepoint savepoint = conn.setSavepoint();
+
+                    try {
+                        counts[i] = statementCache.execute(conn, write.sql, stmt -> executeWrite(stmt, write.params));
+                        conn.releaseSavepoint(savepoint);
+                    } catch (SQLException e) {
+                        conn.rollback(savepoint);
+                        failures[i] = e;
+                    }
+                }
+
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            for (PendingWrite write : group) {
+                if (write.future.completeExceptionally(new RuntimeException("SQLite group commit failed: " + e.getMessage(), e))) {
+                    failedWrites.increment();
+                }
+            }
+            return;
+        }
+
+        commits.increment();
+        for (int i = 0; i < group.size(); i++) {
+            if (failures[i] != null) {
+                if (group.get(i).future.completeExceptionally(
+                        new RuntimeException("SQLite update failed: " + failures[i].getMessage(), failures[i]))) {
+                    failedWrites.increment();
+                }
+            } else if (group.get(i).future.complete(counts[i])) {
+                writes.increment();
+            }
+        }
+    }
+
+    private int executeWrite(PreparedStatement stmt, Object[] params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            stmt.setObject(i + 1, params[i]);
+        }
+        stmt.execute();
+        return Math.max(stmt.getUpdateCount(), 0);
+    }
+
+    public GroupCommitStats getStats() {
+        long commitCount = commits.sum();
+        long writeCount = writes.sum();
+        double seconds = (System.nanoTime() - startedAt) / 1_000_000_000.0;
+
+        return new GroupCommitStats(
+                commitCount,
+                writeCount,
+                failedWrites.sum(),
+                pending.get(),
+                seconds > 0 ? commitCount / seconds : 0.0,
+                commitCount > 0 ? (double) writeCount / commitCount : 0.0,
+                flushWindowMillis,
+                maxGroupSize);
+    }
+
+    // Queued writes are committed before returning; any still queued after 30 seconds are failed
+    public void shutdown() {
+        running = false;
+        scheduler.shutdownNow();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        flush();
+        while (committing.get() || !queue.isEmpty()) {
+            long remaining = deadline - System.nanoTime();
+            CompletableFuture<Void> current = inFlight;
+            if (remaining <= 0 || current == null) {
+                break;
+            }
+
+            try {
+                current.get(remaining, TimeUnit.NANOSECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                // Failures are reported on the writes' own futures
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            flush();
+        }
+
+        PendingWrite write;
+        while ((write = queue.poll()) != null) {
+            pending.decrementAndGet();
+            failedWrites.increment();
+            write.future.completeExceptionally(new IllegalStateException("Group commit writer is shut down"));
+        }
+    }
+
+    private static class PendingWrite {
+        final String sql;
+        final Object[] params;
+        final QueryPriority priority;
+        final long deadlineNanos;
+        final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+        PendingWrite(String sql, Object[] params, QueryPriority priority, long deadlineNanos) {
+            this.sql = sql;
+            this.params = params;
+            this.priority = priority;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+}
@@ -0,0 +1,604 @@
+package de.tecca.eclipse.database;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+// Append-only key/value log behind JSONProvider. Every put or delete appends one checksummed
+// record to the active segment; an in-memory index maps each key to its latest record. Segments
+// roll at a fixed size, and compaction rewrites the live records of all sealed segments into one.
+//
+// Crash safety: a torn record at the tail fails its checksum and is truncated on the next open.
+// Appends are fsynced on a timer, so a crash loses at most one sync interval. Compaction output is
+// only swapped in after a commit record; an interrupted swap is finished on the next open.
+public class JSONLogStore {
+
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 1000;
+
+    private static final long SEGMENT_SIZE = 8L * 1024 * 1024;
+    private static final long MIN_COMPACTION_BYTES = 1024L * 1024;
+    private static final int MAX_SEALED_SEGMENTS = 8;
+    private static final long COMPACTION_CHECK_SECONDS = 60;
+    private static final int HEADER_SIZE = 13;
+    private static final byte TOMBSTONE = 0;
+    private static final byte PUT = 1;
+    private static final byte COMMIT = 2;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String COMPACT_SUFFIX = ".compact";
+    private static final String IMPORTED_MARKER = ".imported";
+
+    private final Path directory;
+    private final Logger logger;
+    private final long syncIntervalMillis;
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+    private final List<Segment> sealed = new CopyOnWriteArrayList<>();
+    private final Object writeLock = new Object();
+    private final Object compactionLock = new Object();
+    private final ScheduledExecutorService scheduler;
+    private Segment active;
+    private volatile boolean dirty;
+
+    public JSONLogStore(Path directory, Path legacyDirectory, Logger logger, long syncIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.logger = logger;
+        this.syncIntervalMillis = syncIntervalMillis;
+
+        Files.createDirectories(directory);
+        recoverCompaction();
+
+        // An import interrupted by a crash starts over instead of leaving keys behind
+        boolean imported = Files.exists(directory.resolve(IMPORTED_MARKER));
+        if (!imported) {
+            for (Path path : listSegments().values()) {
+                Files.delete(path);
+            }
+        }
+
+        openSegments();
+
+        if (!imported) {
+            importLegacy(legacyDirectory);
+            sync();
+            Files.createFile(directory.resolve(IMPORTED_MARKER));
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Eclipse-JSON-Log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (syncIntervalMillis > 0) {
+            scheduler.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        scheduler.scheduleWithFixedDelay(this::compactIfNeeded, COMPACTION_CHECK_SECONDS, COMPACTION_CHECK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void put(String key, String json) throws IOException {
+        append(PUT, key, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void remove(String key) throws IOException {
+        if (index.containsKey(key)) {
+            append(TOMBSTONE, key, new byte[0]);
+        }
+    }
+
+    // A ClosedChannelException means compaction retired the segment in between; the index already
+    // points at the compacted copy, so the lookup is simply repeated
+    public String get(String key) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            Entry entry = index.get(key);
+            if (entry == null) {
+                return null;
+            }
+
+            try {
+                ByteBuffer value = ByteBuffer.allocate(entry.valueLength);
+                readFully(entry.segment.channel(), value, entry.valueOffset());
+                return new String(value.array(), StandardCharsets.UTF_8);
+            } catch (ClosedChannelException e) {
+                if (attempt >= 2) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    public boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    public List<String> keys(String prefix) {
+        List<String> keys = new ArrayList<>();
+        for (String key : index.keySet()) {
+            if (key.startsWith(prefix)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public int getSegmentCount() {
+        return sealed.size() + 1;
+    }
+
+    public void sync() throws IOException {
+        if (dirty) {
+            dirty = false;
+            FileChannel channel;
+            synchronized (writeLock) {
+                channel = active.channel();
+            }
+            channel.force(false);
+        }
+    }
+
+    // Seals the active segment first so everything written so far is compacted
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            synchronized (writeLock) {
+                if (active.size > 0) {
+                    roll();
+                }
+            }
+            compactSealed();
+        }
+    }
+
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (compactionLock) {
+            synchronized (writeLock) {
+                try {
+                    active.channel().force(true);
+                } catch (IOException e) {
+                    logger.severe("Failed to sync JSON log on shutdown: " + e.getMessage());
+                }
+                active.retire();
+                for (Segment segment : sealed) {
+                    segment.retire();
+                }
+            }
+        }
+    }
+
+    private void append(byte type, String key, byte[] value) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = encode(type, keyBytes, value);
+        int checksum = record.getInt(0);
+
+        synchronized (writeLock) {
+            if (active.size >= SEGMENT_SIZE) {
+                roll();
+            }
+
+            long offset = active.size;
+            writeFully(active.channel(), record, offset);
+            active.size += record.limit();
+
+            // Updated under the write lock so the index always reflects log order
+            if (type == PUT) {
+                index.put(key, new Entry(active, offset, keyBytes.length, value.length, checksum));
+            } else {
+                index.remove(key);
+            }
+
+            if (syncIntervalMillis <= 0) {
+                active.channel().force(false);
+            } else {
+                dirty = true;
+            }
+        }
+    }
+
+    private void roll() throws IOException {
+        active.channel().force(false);
+        sealed.add(active);
+        active = createSegment(active.id + 1);
+    }
+
+    private void compactIfNeeded() {
+        try {
+            long sealedBytes = 0;
+            for (Segment segment : sealed) {
+                sealedBytes += segment.size;
+            }
+
+            long liveBytes = 0;
+            for (Entry entry : index.values()) {
+                if (entry.segment != active) {
+                    liveBytes += entry.recordLength();
+                }
+            }
+
+            if (sealed.size() > MAX_SEALED_SEGMENTS
+                    || (sealedBytes >= MIN_COMPACTION_BYTES && sealedBytes - liveBytes >= sealedBytes / 2)) {
+                synchronized (compactionLock) {
+                    compactSealed();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warning("JSON log compaction failed: " + e.getMessage());
+        }
+    }
+
+    // Live records of every sealed segment are copied into one file named after the newest input.
+    // Tombstones are dropped, since all older segments go away with the inputs.
+    private void compactSealed() throws IOException {
+        List<Segment> inputs = List.copyOf(sealed);
+        if (inputs.size() < 2 && (inputs.isEmpty() || inputs.get(0).size == liveBytes(inputs.get(0)))) {
+            return;
+        }
+
+        Segment newest = inputs.get(inputs.size() - 1);
+        Path temp = directory.resolve(segmentName(newest.id) + COMPACT_SUFFIX);
+        Segment compacted = new Segment(newest.id, temp, FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE));
+
+        Set<Segment> inputSet = new HashSet<>(inputs);
+        Map<String, Entry[]> moved = new HashMap<>();
+        for (Map.Entry<String, Entry> mapping : index.entrySet()) {
+            Entry entry = mapping.getValue();
+            if (!inputSet.contains(entry.segment)) {
+                continue;
+            }
+
+            ByteBuffer record = ByteBuffer.allocate(entry.recordLength());
+            try {
+                readFully(entry.segment.channel(), record, entry.offset);
+            } catch (ClosedChannelException e) {
+                continue;
+            }
+            record.flip();
+
+            long offset = compacted.size;
+            writeFully(compacted.channel(), record, offset);
+            compacted.size += entry.recordLength();
+            moved.put(mapping.getKey(), new Entry[]{entry,
+                    new Entry(compacted, offset, entry.keyLength, entry.valueLength, entry.checksum)});
+        }
+
+        ByteBuffer commit = encode(COMMIT, new byte[0], new byte[0]);
+        writeFully(compacted.channel(), commit, compacted.size);
+        compacted.size += commit.limit();
+        compacted.channel().force(true);
+
+        // Keys rewritten or deleted during compaction keep their newer state
+        for (Map.Entry<String, Entry[]> move : moved.entrySet()) {
+            index.replace(move.getKey(), move.getValue()[0], move.getValue()[1]);
+        }
+
+        synchronized (writeLock) {
+            sealed.removeAll(inputs);
+            sealed.add(0, compacted);
+        }
+
+        for (Segment input : inputs) {
+            input.retire();
+            if (input != newest) {
+                Files.deleteIfExists(input.path);
+            }
+        }
+        compacted.moveTo(newest.path);
+    }
+
+    private long liveBytes(Segment segment) {
+        long live = 0;
+        for (Entry entry : index.values()) {
+            if (entry.segment == segment) {
+                live += entry.recordLength();
+            }
+        }
+        return live;
+    }
+
+    private void openSegments() throws IOException {
+        TreeMap<Long, Path> segments = listSegments();
+
+        for (Map.Entry<Long, Path> file : segments.entrySet()) {
+            Segment segment = new Segment(file.getKey(), file.getValue(), FileChannel.open(file.getValue(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE));
+            boolean last = file.getKey().equals(segments.lastKey());
+
+            long end = scan(file.getValue(), (position, record) -> {
+                if (record.type == PUT) {
+                    index.put(record.key, new Entry(segment, position, record.keyLength, record.valueLength, record.checksum));
+                } else if (record.type == TOMBSTONE) {
+                    index.remove(record.key);
+                }
+            });
+
+            long size = segment.channel().size();
+            if (end < size) {
+                logger.warning("JSON log segment " + file.getValue().getFileName() + " has " + (size - end)
+                        + " unreadable trailing bytes" + (last ? ", truncating" : ", skipping them"));
+                if (last) {
+                    segment.channel().truncate(end);
+                }
+            }
+            segment.size = end;
+
+            if (last) {
+                active = segment;
+            } else {
+                sealed.add(segment);
+            }
+        }
+
+        if (active == null) {
+            active = createSegment(1);
+        }
+    }
+
+    // A complete compaction file is swapped in; a partial one is thrown away
+    private void recoverCompaction() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX + COMPACT_SUFFIX)) {
+            for (Path temp : files) {
+                String name = temp.getFileName().toString();
+                long id = parseId(name.substring(0, name.length() - COMPACT_SUFFIX.length()));
+
+                boolean[] committed = {false};
+                scan(temp, (position, record) -> committed[0] = record.type == COMMIT);
+
+                if (!committed[0] || id < 0) {
+                    Files.delete(temp);
+                    continue;
+                }
+
+                for (Map.Entry<Long, Path> segment : listSegments().entrySet()) {
+                    if (segment.getKey() < id) {
+                        Files.delete(segment.getValue());
+                    }
+                }
+                Files.move(temp, directory.resolve(segmentName(id)), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+    }
+
+    private void importLegacy(Path legacyDirectory) throws IOException {
+        if (legacyDirectory == null || !Files.isDirectory(legacyDirectory)) {
+            return;
+        }
+
+        int count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(legacyDirectory, "*.json")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                put(name.substring(0, name.length() - 5), Files.readString(file));
+                count++;
+            }
+        }
+
+        if (count > 0) {
+            logger.info("Imported " + count + " JSON files into the log store");
+        }
+    }
+
+    // Returns the end of the last intact record
+    private static long scan(Path path, BiConsumer<Long, Record> consumer) throws IOException {
+        long position = 0;
+
+        try (InputStream stream = Files.newInputStream(path);
+             DataInputStream input = new DataInputStream(new BufferedInputStream(stream))) {
+            long size = Files.size(path);
+
+            while (size - position >= HEADER_SIZE) {
+                int checksum = input.readInt();
+                byte type = input.readByte();
+                int keyLength = input.readInt();
+                int valueLength = input.readInt();
+
+                if (keyLength < 0 || valueLength < 0 || (long) HEADER_SIZE + keyLength + valueLength > size - position) {
+                    break;
+                }
+
+                byte[] key = new byte[keyLength];
+                byte[] value = new byte[valueLength];
+                input.readFully(key);
+                input.readFully(value);
+
+                if (checksum(type, key, value) != checksum) {
+                    break;
+                }
+
+                consumer.accept(position, new Record(type, new String(key, StandardCharsets.UTF_8), keyLength, valueLength, checksum));
+                position += HEADER_SIZE + keyLength + valueLength;
+            }
+        } catch (EOFException e) {
+            // Torn tail record
+        }
+
+        return position;
+    }
+
+    private static ByteBuffer encode(byte type, byte[] key, byte[] value) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + key.length + value.length);
+        record.putInt(checksum(type, key, value));
+        record.put(type);
+        record.putInt(key.length);
+        record.putInt(value.length);
+        record.put(key);
+        record.put(value);
+        record.flip();
+        return record;
+    }
+
+    private static int checksum(byte type, byte[] key, byte[] value) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(ByteBuffer.allocate(8).putInt(key.length).putInt(value.length).array());
+        crc.update(key);
+        crc.update(value);
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("JSON log record extends past the end of its segment");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private Segment createSegment(long id) throws IOException {
+        Path path = directory.resolve(segmentName(id));
+        return new Segment(id, path, FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    private TreeMap<Long, Path> listSegments() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                long id = parseId(file.getFileName().toString());
+                if (id >= 0) {
+                    segments.put(id, file);
+                }
+            }
+        }
+        return segments;
+    }
+
+    private static String segmentName(long id) {
+        return String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX);
+    }
+
+    private static long parseId(String name) {
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            dirty = true;
+            logger.warning("Failed to sync JSON log: " + e.getMessage());
+        }
+    }
+
+    private static class Segment {
+        final long id;
+        volatile Path path;
+        volatile FileChannel channel;
+        volatile boolean retired;
+        long size;
+
+        Segment(long id, Path path, FileChannel channel) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+        }
+
+        // A thread interrupted mid-read closes the shared channel; live segments reopen it
+        synchronized FileChannel channel() throws IOException {
+            if (!channel.isOpen()) {
+                if (retired) {
+                    throw new ClosedChannelException();
+                }
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            return channel;
+        }
+
+        synchronized void moveTo(Path target) throws IOException {
+            Files.move(path, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            path = target;
+        }
+
+        synchronized void retire() {
+            retired = true;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing left to flush on a retired segment
+            }
+        }
+    }
+
+    private static class Entry {
+        final Segment segment;
+        final long offset;
+        final int keyLength;
+        final int valueLength;
+        final int checksum;
+
+        Entry(Segment segment, long offset, int keyLength, int valueLength, int checksum) {
+            this.segment = segment;
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+            this.checksum = checksum;
+        }
+
+        long valueOffset() {
+            return offset + HEADER_SIZE + keyLength;
+        }
+
+        int recordLength() {
+            return HEADER_SIZE + keyLength + valueLength;
+        }
+    }
+
+    private static class Record {
+        final byte type;
+        final String key;
+        final int keyLength;
+        final int valueLength;
+        final int checksum;
+
+        Record(byte type, String key, int keyLength, int valueLength, int checksum) {
+            this.type = type;
+            this.key = key;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+            this.checksum = checksum;
+        }
+    }
+}
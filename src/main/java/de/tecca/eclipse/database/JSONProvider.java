@@ -1,27 +1,61 @@
 package de.tecca.eclipse.database;
 
+import de.tecca.eclipse.api.database.RowSet;
+import de.tecca.eclipse.api.database.Session;
 import de.tecca.eclipse.api.database.Transaction;
 import org.bukkit.plugin.Plugin;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
 import java.util.Optional;
+import java.util.Set;
 
 public class JSONProvider implements DatabaseProvider {
 
+    public static final long DEFAULT_FLUSH_DELAY_MILLIS = 1000;
+    private static final int MAX_WRITE_ATTEMPTS = 5;
+
     private final Plugin plugin;
     private final File dataDirectory;
     private final Gson gson;
     private final Map<String, Object> cache = new ConcurrentHashMap<>();
+    private final JSONLogStore logStore;
+
+    // Keys set since their last write, the JSON last written per key, and failed scheduled writes per key
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final Map<String, String> written = new ConcurrentHashMap<>();
+    private final Map<String, Integer> failedWrites = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService ioThread;
+    private volatile long flushDelayMillis = DEFAULT_FLUSH_DELAY_MILLIS;
 
     public JSONProvider(Plugin plugin) {
+        this(plugin, false);
+    }
+
+    // The log-structured layout keeps values in append-only segments under json-log and only
+    // loads them on demand; existing json-data files are imported the first time it opens
+    public JSONProvider(Plugin plugin, boolean logStructured) {
         this.plugin = plugin;
         this.dataDirectory = new File(plugin.getDataFolder(), "json-data");
         this.gson = new GsonBuilder()
@@ -33,7 +67,32 @@ public class JSONProvider implements DatabaseProvider {
             dataDirectory.mkdirs();
         }
 
-        loadAllData();
+        this.ioThread = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Eclipse-JSON-IO");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (logStructured) {
+            try {
+                this.logStore = new JSONLogStore(new File(plugin.getDataFolder(), "json-log").toPath(),
+                        dataDirectory.toPath(), plugin.getLogger(), JSONLogStore.DEFAULT_SYNC_INTERVAL_MILLIS);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to open JSON log store: " + e.getMessage(), e);
+            }
+        } else {
+            this.logStore = null;
+            deleteTempFiles();
+            loadAllData();
+        }
+    }
+
+    public boolean isLogStructured() {
+        return logStore != null;
+    }
+
+    public void setFlushDelay(long millis) {
+        this.flushDelayMillis = millis;
     }
 
     @Override
@@ -41,6 +100,16 @@ public class JSONProvider implements DatabaseProvider {
         return CompletableFuture.completedFuture(new ArrayList<>());
     }
 
+    @Override
+    public CompletableFuture<RowSet> queryRowSet(String sql, Object... params) {
+        return CompletableFuture.completedFuture(RowSet.empty());
+    }
+
+    @Override
+    public <T> CompletableFuture<List<T>> queryAs(Class<T> type, String sql, Object... params) {
+        return CompletableFuture.completedFuture(new ArrayList<>());
+    }
+
     @Override
     public CompletableFuture<Integer> update(String sql, Object... params) {
         return CompletableFuture.completedFuture(0);
@@ -51,11 +120,63 @@ public class JSONProvider implements DatabaseProvider {
         return CompletableFuture.completedFuture(null);
     }
 
+    @Override
+    public CompletableFuture<int[]> batch(String sql, List<Object[]> parameterSets, int chunkSize) {
+        return CompletableFuture.completedFuture(new int[parameterSets.size()]);
+    }
+
+    @Override
+    public CompletableFuture<Long> stream(String sql, Object[] params, int fetchSize, Consumer<Map<String, Object>> rowConsumer) {
+        return CompletableFuture.completedFuture(0L);
+    }
+
+    // Only marks the key dirty; the I/O thread writes it once per flush delay no matter how often
+    // it is set in between. flush(key) is the barrier for callers that need it on disk.
     public <T> CompletableFuture<Void> setJSON(String key, T data) {
+        cache.put(key, data);
+        failedWrites.remove(key);
+        markDirty(key);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    public CompletableFuture<Void> flush(String key) {
         return CompletableFuture.runAsync(() -> {
-            cache.put(key, data);
-            saveToFile(key, data);
-        });
+            try {
+                writeKey(key);
+                syncLog();
+            } catch (IOException e) {
+                markDirty(key);
+                throw new UncheckedIOException("Failed to flush JSON data for key " + key, e);
+            }
+        }, ioThread);
+    }
+
+    public CompletableFuture<Void> flushAll() {
+        return CompletableFuture.runAsync(() -> {
+            IOException failure = null;
+            for (String key : new ArrayList<>(dirty)) {
+                try {
+                    writeKey(key);
+                } catch (IOException e) {
+                    markDirty(key);
+                    failure = e;
+                }
+            }
+
+            try {
+                syncLog();
+            } catch (IOException e) {
+                failure = e;
+            }
+
+            if (failure != null) {
+                throw new UncheckedIOException("Failed to flush JSON data", failure);
+            }
+        }, ioThread);
+    }
+
+    public int getDirtyCount() {
+        return dirty.size();
     }
 
     public <T> CompletableFuture<Optional<T>> getJSON(String key, Class<T> type) {
@@ -64,7 +185,8 @@ public class JSONProvider implements DatabaseProvider {
             if (data == null) {
                 data = loadFromFile(key, type);
                 if (data != null) {
-                    cache.put(key, data);
+                    cache.putIfAbsent(key, data);
+                    remember(key, data);
                 }
             }
 
@@ -76,11 +198,11 @@ public class JSONProvider implements DatabaseProvider {
         });
     }
 
+    // Runs on the I/O thread so it cannot be overtaken by an earlier write of the same key
     public CompletableFuture<Void> removeJSON(String key) {
-        return CompletableFuture.runAsync(() -> {
-            cache.remove(key);
-            deleteFile(key);
-        });
+        cache.remove(key);
+        dirty.remove(key);
+        return CompletableFuture.runAsync(() -> deleteFile(key), ioThread);
     }
 
     public CompletableFuture<List<String>> listJSONKeys(String prefix) {
@@ -93,6 +215,15 @@ public class JSONProvider implements DatabaseProvider {
                 }
             }
 
+            if (logStore != null) {
+                for (String key : logStore.keys(prefix)) {
+                    if (!keys.contains(key)) {
+                        keys.add(key);
+                    }
+                }
+                return keys;
+            }
+
             // Also check files
             File[] files = dataDirectory.listFiles((dir, name) ->
                     name.startsWith(prefix) && name.endsWith(".json"));
@@ -116,6 +247,16 @@ public class JSONProvider implements DatabaseProvider {
         throw new UnsupportedOperationException("Transactions not supported with JSON storage");
     }
 
+    @Override
+    public <T> CompletableFuture<T> withSession(Function<Session, T> work) {
+        throw new UnsupportedOperationException("Sessions not supported with JSON storage");
+    }
+
+    @Override
+    public SqlDialect getDialect() {
+        return SqlDialect.MYSQL;
+    }
+
     @Override
     public boolean isConnected() {
         return dataDirectory.exists() && dataDirectory.canWrite();
@@ -123,10 +264,80 @@ public class JSONProvider implements DatabaseProvider {
 
     @Override
     public void shutdown() {
-        saveAllData();
+        // Cached objects changed in place without another setJSON still differ from what was written
+        for (Map.Entry<String, Object> entry : cache.entrySet()) {
+            if (!gson.toJson(entry.getValue()).equals(written.get(entry.getKey()))) {
+                dirty.add(entry.getKey());
+            }
+        }
+
+        try {
+            flushAll().get(30, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            plugin.getLogger().severe("JSON data could not be flushed on shutdown: " + e.getMessage());
+        }
+
+        ioThread.shutdown();
+        if (logStore != null) {
+            logStore.close();
+        }
         cache.clear();
     }
 
+    private void markDirty(String key) {
+        if (dirty.add(key)) {
+            ioThread.schedule(() -> {
+                try {
+                    writeKey(key);
+                } catch (IOException e) {
+                    writeFailed(key, e);
+                }
+            }, flushDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // After MAX_WRITE_ATTEMPTS the key stops being rescheduled; the next setJSON, flush or
+    // shutdown tries it again
+    private void writeFailed(String key, IOException error) {
+        int attempts = failedWrites.merge(key, 1, Integer::sum);
+        if (attempts >= MAX_WRITE_ATTEMPTS) {
+            failedWrites.remove(key);
+            plugin.getLogger().severe("Giving up on JSON data for key " + key + " after " + attempts
+                    + " failed writes: " + error.getMessage());
+            return;
+        }
+
+        plugin.getLogger().severe("Failed to save JSON data for key " + key + ": " + error.getMessage());
+        markDirty(key);
+    }
+
+    // Serializes the current value, so a key set many times within one delay is written once
+    private void writeKey(String key) throws IOException {
+        if (!dirty.remove(key)) {
+            return;
+        }
+
+        Object data = cache.get(key);
+        if (data == null) {
+            return;
+        }
+
+        String json = gson.toJson(data);
+        saveToFile(key, json);
+        written.put(key, json);
+        failedWrites.remove(key);
+    }
+
+    private void syncLog() throws IOException {
+        if (logStore != null) {
+            logStore.sync();
+        }
+    }
+
+    private void remember(String key, Object data) {
+        written.put(key, gson.toJson(data));
+    }
+
     private void loadAllData() {
         File[] files = dataDirectory.listFiles((dir, name) -> name.endsWith(".json"));
         if (files != null) {
@@ -135,35 +346,66 @@ public class JSONProvider implements DatabaseProvider {
                 Object data = loadFromFile(key, Object.class);
                 if (data != null) {
                     cache.put(key, data);
+                    remember(key, data);
                 }
             }
         }
     }
 
-    private void saveAllData() {
-        for (Map.Entry<String, Object> entry : cache.entrySet()) {
-            saveToFile(entry.getKey(), entry.getValue());
+    // Left behind when the server died between writing a temp file and moving it into place
+    private void deleteTempFiles() {
+        File[] files = dataDirectory.listFiles((dir, name) -> name.endsWith(".json.tmp"));
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
         }
     }
 
-    private void saveToFile(String key, Object data) {
-        File file = new File(dataDirectory, sanitizeKey(key) + ".json");
+    private void saveToFile(String key, String json) throws IOException {
+        if (logStore != null) {
+            logStore.put(sanitizeKey(key), json);
+            return;
+        }
 
-        try (FileWriter writer = new FileWriter(file)) {
-            gson.toJson(data, writer);
-        } catch (Exception e) {
-            plugin.getLogger().severe("Failed to save JSON data for key " + key + ": " + e.getMessage());
+        Path target = new File(dataDirectory, sanitizeKey(key) + ".json").toPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        // Readers see the old file or the new one, never a half-written one
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
         }
     }
 
     private <T> T loadFromFile(String key, Class<T> type) {
+        if (logStore != null) {
+            try {
+                String json = logStore.get(sanitizeKey(key));
+                return json != null ? gson.fromJson(json, type) : null;
+            } catch (Exception e) {
+                plugin.getLogger().severe("Failed to load JSON data for key " + key + ": " + e.getMessage());
+                return null;
+            }
+        }
+
         File file = new File(dataDirectory, sanitizeKey(key) + ".json");
 
         if (!file.exists()) {
             return null;
         }
 
-        try (FileReader reader = new FileReader(file)) {
+        try (FileReader reader = new FileReader(file, StandardCharsets.UTF_8)) {
             return gson.fromJson(reader, type);
         } catch (Exception e) {
             plugin.getLogger().severe("Failed to load JSON data for key " + key + ": " + e.getMessage());
@@ -172,6 +414,17 @@ public class JSONProvider implements DatabaseProvider {
     }
 
     private void deleteFile(String key) {
+        written.remove(key);
+        failedWrites.remove(key);
+        if (logStore != null) {
+            try {
+                logStore.remove(sanitizeKey(key));
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to delete JSON data for key " + key + ": " + e.getMessage());
+            }
+            return;
+        }
+
         File file = new File(dataDirectory, sanitizeKey(key) + ".json");
         if (file.exists()) {
             file.delete();
@@ -0,0 +1,19 @@
+package de.tecca.eclipse.database;
+
+final class KeyValues {
+
+    private KeyValues() {
+    }
+
+    // Drivers return INTEGER keys as Integer or Long and text keys as String, while callers
+    // may pass any Number or a UUID; normalized keys compare equal either way
+    static Object normalize(Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof Number number) {
+            return number.longValue();
+        }
+        return value.toString();
+    }
+}
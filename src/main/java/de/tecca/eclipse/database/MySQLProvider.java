@@ -1,12 +1,16 @@
 package de.tecca.eclipse.database;
 
+import de.tecca.eclipse.api.database.QueryPriority;
+import de.tecca.eclipse.api.database.RowSet;
+import de.tecca.eclipse.api.database.Session;
 import de.tecca.eclipse.api.database.Transaction;
 import java.sql.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.ArrayList;
 
 public class MySQLProvider implements DatabaseProvider {
 
@@ -31,14 +35,53 @@ public class MySQLProvider implements DatabaseProvider {
 
     @Override
     public CompletableFuture<List<Map<String, Object>>> query(String sql, Object... params) {
-        return CompletableFuture.supplyAsync(() -> {
-            try (Connection conn = connectionManager.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+        boolean primary = ConnectionManager.isPinnedToPrimary();
+        return connectionManager.supply(QueryPriority.INTERACTIVE, guard -> {
+            try (Connection conn = connectionManager.getReadConnection(primary);
+                 PreparedStatement stmt = guard.track(conn.prepareStatement(sql))) {
+
+                setParameters(stmt, params);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return ResultSets.toMaps(rs);
+                }
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Query failed: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<RowSet> queryRowSet(String sql, Object... params) {
+        boolean primary = ConnectionManager.isPinnedToPrimary();
+        return connectionManager.supply(QueryPriority.INTERACTIVE, guard -> {
+            try (Connection conn = connectionManager.getReadConnection(primary);
+                 PreparedStatement stmt = guard.track(conn.prepareStatement(sql))) {
+
+                setParameters(stmt, params);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return RowSet.fromResultSet(rs);
+                }
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Query failed: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @Override
+    public <T> CompletableFuture<List<T>> queryAs(Class<T> type, String sql, Object... params) {
+        boolean primary = ConnectionManager.isPinnedToPrimary();
+        return connectionManager.supply(QueryPriority.INTERACTIVE, guard -> {
+            try (Connection conn = connectionManager.getReadConnection(primary);
+                 PreparedStatement stmt = guard.track(conn.prepareStatement(sql))) {
 
                 setParameters(stmt, params);
 
                 try (ResultSet rs = stmt.executeQuery()) {
-                    return mapResultSet(rs);
+                    return RowMapper.of(type, sql, rs.getMetaData()).mapAll(rs);
                 }
 
             } catch (SQLException e) {
@@ -49,9 +92,9 @@ public class MySQLProvider implements DatabaseProvider {
 
     @Override
     public CompletableFuture<Integer> update(String sql, Object... params) {
-        return CompletableFuture.supplyAsync(() -> {
+        return connectionManager.supply(guard -> {
             try (Connection conn = connectionManager.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                 PreparedStatement stmt = guard.track(conn.prepareStatement(sql))) {
 
                 setParameters(stmt, params);
                 return stmt.executeUpdate();
@@ -64,9 +107,9 @@ public class MySQLProvider implements DatabaseProvider {
 
     @Override
     public CompletableFuture<Void> execute(String sql, Object... params) {
-        return CompletableFuture.runAsync(() -> {
+        return connectionManager.run(guard -> {
             try (Connection conn = connectionManager.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                 PreparedStatement stmt = guard.track(conn.prepareStatement(sql))) {
 
                 setParameters(stmt, params);
                 stmt.execute();
@@ -77,17 +120,105 @@ public class MySQLProvider implements DatabaseProvider {
         });
     }
 
+    @Override
+    public CompletableFuture<int[]> batch(String sql, List<Object[]> parameterSets, int chunkSize) {
+        return connectionManager.supply(guard -> {
+            int[] results = new int[parameterSets.size()];
+
+            for (int start = 0; start < parameterSets.size(); start += chunkSize) {
+                int end = Math.min(start + chunkSize, parameterSets.size());
+
+                try (Connection conn = connectionManager.getConnection();
+                     PreparedStatement stmt = guard.track(conn.prepareStatement(sql))) {
+
+                    for (int i = start; i < end; i++) {
+                        setParameters(stmt, parameterSets.get(i));
+                        stmt.addBatch();
+                    }
+
+                    int[] counts = stmt.executeBatch();
+                    System.arraycopy(counts, 0, results, start, counts.length);
+
+                } catch (SQLException e) {
+                    throw new RuntimeException("Batch failed: " + e.getMessage(), e);
+                }
+            }
+
+            return results;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> stream(String sql, Object[] params, int fetchSize, Consumer<Map<String, Object>> rowConsumer) {
+        boolean primary = ConnectionManager.isPinnedToPrimary();
+        return connectionManager.supply(guard -> {
+            try (Connection conn = connectionManager.getReadConnection(primary);
+                 PreparedStatement stmt = guard.track(conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY))) {
+
+                stmt.setFetchSize(fetchSize);
+                setParameters(stmt, params);
+
+                long rows = 0;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    ResultSetMetaData metaData = rs.getMetaData();
+                    int columnCount = metaData.getColumnCount();
+                    String[] columnNames = new String[columnCount];
+                    for (int i = 0; i < columnCount; i++) {
+                        columnNames[i] = metaData.getColumnLabel(i + 1);
+                    }
+
+                    // Stops early when the caller cancels the returned future or the deadline passes
+                    while (!guard.isAborted() && rs.next()) {
+                        Map<String, Object> row = new HashMap<>(columnCount * 2);
+                        for (int i = 0; i < columnCount; i++) {
+                            row.put(columnNames[i], rs.getObject(i + 1));
+                        }
+                        rowConsumer.accept(row);
+                        rows++;
+                    }
+                }
+                return rows;
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Stream failed: " + e.getMessage(), e);
+            }
+        });
+    }
+
     @Override
     public Transaction beginTransaction() {
         try {
             Connection conn = connectionManager.getConnection();
             conn.setAutoCommit(false);
-            return new TransactionImpl(conn);
+            return new TransactionImpl(conn, connectionManager, null);
         } catch (SQLException e) {
             throw new RuntimeException("Failed to begin transaction: " + e.getMessage(), e);
         }
     }
 
+    // The whole session holds one write connection and runs under a single deadline
+    @Override
+    public <T> CompletableFuture<T> withSession(Function<Session, T> work) {
+        return connectionManager.supply(guard -> {
+            try (Connection conn = connectionManager.getConnection()) {
+                SessionImpl session = new SessionImpl(conn, null, guard);
+                try {
+                    return work.apply(session);
+                } finally {
+                    session.close();
+                }
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to open session: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @Override
+    public SqlDialect getDialect() {
+        return SqlDialect.MYSQL;
+    }
+
     @Override
     public boolean isConnected() {
         return connectionManager != null && connectionManager.isConnected();
@@ -106,24 +237,6 @@ public class MySQLProvider implements DatabaseProvider {
         }
     }
 
-    private List<Map<String, Object>> mapResultSet(ResultSet rs) throws SQLException {
-        List<Map<String, Object>> results = new ArrayList<>();
-        ResultSetMetaData metaData = rs.getMetaData();
-        int columnCount = metaData.getColumnCount();
-
-        while (rs.next()) {
-            Map<String, Object> row = new HashMap<>();
-            for (int i = 1; i <= columnCount; i++) {
-                String columnName = metaData.getColumnLabel(i);
-                Object value = rs.getObject(i);
-                row.put(columnName, value);
-            }
-            results.add(row);
-        }
-
-        return results;
-    }
-
     // Getters
     public String getHost() { return host; }
     public int getPort() { return port; }
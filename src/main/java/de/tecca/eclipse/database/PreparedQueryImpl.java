@@ -0,0 +1,75 @@
+package de.tecca.eclipse.database;
+
+import de.tecca.eclipse.api.database.PreparedQuery;
+import de.tecca.eclipse.api.database.RowSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.List;
+import java.util.Map;
+
+public class PreparedQueryImpl implements PreparedQuery {
+
+    private final String tableName;
+    private final String sql;
+    private final int parameterCount;
+    private final boolean write;
+    private final DatabaseProvider provider;
+    private final QueryCache queryCache;
+
+    public PreparedQueryImpl(String tableName, String sql, boolean write, DatabaseProvider provider, QueryCache queryCache) {
+        this.tableName = tableName;
+        this.sql = sql;
+        this.write = write;
+        this.provider = provider;
+        this.queryCache = queryCache;
+        this.parameterCount = countPlaceholders(sql);
+    }
+
+    @Override
+    public String getSql() {
+        return sql;
+    }
+
+    @Override
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> query(Object... params) {
+        checkParameters(params);
+        return provider.query(sql, params);
+    }
+
+    @Override
+    public CompletableFuture<RowSet> queryRowSet(Object... params) {
+        checkParameters(params);
+        return provider.queryRowSet(sql, params);
+    }
+
+    @Override
+    public CompletableFuture<Integer> update(Object... params) {
+        checkParameters(params);
+        CompletableFuture<Integer> future = provider.update(sql, params);
+
+        if (write && queryCache != null) {
+            return future.whenComplete((result, error) -> queryCache.invalidate(tableName));
+        }
+        return future;
+    }
+
+    private void checkParameters(Object[] params) {
+        if (params.length != parameterCount) {
+            throw new IllegalArgumentException("Expected " + parameterCount + " parameters but got " + params.length);
+        }
+    }
+
+    private static int countPlaceholders(String sql) {
+        int count = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            if (sql.charAt(i) == '?') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -1,31 +1,82 @@
 package de.tecca.eclipse.database;
 
+import de.tecca.eclipse.api.database.Aggregate;
+import de.tecca.eclipse.api.database.Page;
+import de.tecca.eclipse.api.database.PreparedQuery;
 import de.tecca.eclipse.api.database.QueryBuilder;
+import de.tecca.eclipse.api.database.QueryPriority;
+import de.tecca.eclipse.api.database.RowSet;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.Optional;
+import java.util.OptionalDouble;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Set;
 
 public class QueryBuilderImpl implements QueryBuilder {
 
+    public static final int DEFAULT_FETCH_SIZE = 500;
+    private static final int DEFAULT_BATCH_CHUNK_SIZE = 1000;
+    private static final String DEFAULT_TIEBREAKER_COLUMN = "id";
+    private static final int MAX_ROWS_PER_STATEMENT = 1000;
+    private static final String AGGREGATE_ALIAS = "agg_value";
+    private static final BigDecimal LONG_MIN = BigDecimal.valueOf(Long.MIN_VALUE);
+    private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+    private static final QueryShapeCache SHAPE_CACHE = new QueryShapeCache(4096);
+
     private final String tableName;
     private final DatabaseProvider provider;
+    private final QueryCache queryCache;
+    private final SingleFlight singleFlight;
+    private final WriteBehindBuffer writeBehind;
 
     private String operation = "SELECT";
     private List<String> selectColumns = new ArrayList<>();
-    private List<String> whereConditions = new ArrayList<>();
+    private List<Condition> whereConditions = new ArrayList<>();
     private List<Object> parameters = new ArrayList<>();
     private Map<String, Object> values = new HashMap<>();
+    private List<String> valueColumns = new ArrayList<>();
+    private List<String> incrementColumns = new ArrayList<>();
     private String orderByColumn;
     private String orderByDirection = "ASC";
     private Integer limitCount;
     private Integer offsetCount;
+    private final List<String> groupByColumns = new ArrayList<>();
+    private final List<Condition> havingConditions = new ArrayList<>();
+    private final List<Object> havingParameters = new ArrayList<>();
+    private final List<BatchEntry> batchEntries = new ArrayList<>();
+    private int batchChunkSize = DEFAULT_BATCH_CHUNK_SIZE;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private Duration cacheTtl;
+    private boolean coalesce = false;
+    private boolean readFromPrimary = false;
+    private Duration timeout;
+    private QueryPriority priority;
+    private String pageToken;
 
     public QueryBuilderImpl(String tableName, DatabaseProvider provider) {
+        this(tableName, provider, null, null, null);
+    }
+
+    public QueryBuilderImpl(String tableName, DatabaseProvider provider, QueryCache queryCache,
+                            SingleFlight singleFlight, WriteBehindBuffer writeBehind) {
         this.tableName = tableName;
         this.provider = provider;
+        this.queryCache = queryCache;
+        this.singleFlight = singleFlight;
+        this.writeBehind = writeBehind;
     }
 
     @Override
@@ -42,23 +93,21 @@ public class QueryBuilderImpl implements QueryBuilder {
 
     @Override
     public QueryBuilder where(String column, String operator, Object value) {
-        whereConditions.add(column + " " + operator + " ?");
+        whereConditions.add(new Condition(column, operator, 1));
         parameters.add(value);
         return this;
     }
 
     @Override
     public QueryBuilder whereIn(String column, Object... values) {
-        String placeholders = "?,".repeat(values.length);
-        placeholders = placeholders.substring(0, placeholders.length() - 1);
-        whereConditions.add(column + " IN (" + placeholders + ")");
+        whereConditions.add(new Condition(column, "IN", values.length));
         parameters.addAll(List.of(values));
         return this;
     }
 
     @Override
     public QueryBuilder whereNotNull(String column) {
-        whereConditions.add(column + " IS NOT NULL");
+        whereConditions.add(new Condition(column, "IS NOT NULL", 0));
         return this;
     }
 
@@ -86,28 +135,204 @@ public class QueryBuilderImpl implements QueryBuilder {
         return this;
     }
 
+    @Override
+    public QueryBuilder cached(Duration ttl) {
+        this.cacheTtl = ttl;
+        return this;
+    }
+
+    @Override
+    public QueryBuilder coalesce() {
+        return coalesce(true);
+    }
+
+    @Override
+    public QueryBuilder coalesce(boolean enabled) {
+        this.coalesce = enabled;
+        return this;
+    }
+
+    @Override
+    public QueryBuilder timeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    @Override
+    public QueryBuilder priority(QueryPriority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    @Override
+    public QueryBuilder onPrimary() {
+        this.readFromPrimary = true;
+        return this;
+    }
+
     @Override
     public CompletableFuture<List<Map<String, Object>>> get() {
         String sql = buildSelectSQL();
-        return provider.query(sql, parameters.toArray());
+        return withBufferedWrites(fetchRows(sql, selectParameters()));
+    }
+
+    @Override
+    public CompletableFuture<RowSet> getRowSet() {
+        String sql = buildSelectSQL();
+        Object[] params = selectParameters();
+        DatabaseProvider target = target();
+        return afterBufferedWrites(() -> read("rowset", sql, params, () -> target.queryRowSet(sql, params)));
+    }
+
+    @Override
+    public <T> CompletableFuture<List<T>> as(Class<T> type) {
+        String sql = buildSelectSQL();
+        Object[] params = selectParameters();
+        DatabaseProvider target = target();
+        return afterBufferedWrites(() -> scoped(() -> target.queryAs(type, sql, params)));
     }
 
     @Override
     public CompletableFuture<Optional<Map<String, Object>>> first() {
         limit(1);
         String sql = buildSelectSQL();
-        return provider.query(sql, parameters.toArray())
-                .thenApply(results -> results.isEmpty() ? Optional.empty() : Optional.of(results.get(0)));
+        return derive(withBufferedWrites(fetchRows(sql, selectParameters())),
+                results -> results.isEmpty() ? Optional.empty() : Optional.of(results.get(0)));
     }
 
     @Override
     public CompletableFuture<Long> count() {
-        String sql = "SELECT COUNT(*) as count FROM " + tableName;
-        if (!whereConditions.isEmpty()) {
-            sql += " WHERE " + String.join(" AND ", whereConditions);
+        String sql = SHAPE_CACHE.get(shape("COUNT"), this::buildCountSQL);
+        Object[] params = parameters.toArray();
+        return afterBufferedWrites(() -> read("count", sql, params, () -> countRows(sql, params)));
+    }
+
+    @Override
+    public QueryBuilder groupBy(String... columns) {
+        groupByColumns.addAll(List.of(columns));
+        return this;
+    }
+
+    @Override
+    public QueryBuilder having(Aggregate aggregate, String column, String operator, Object value) {
+        havingConditions.add(new Condition(aggregate.expression(column), operator, 1));
+        havingParameters.add(value);
+        return this;
+    }
+
+    // Long for integral columns, BigDecimal for DECIMAL columns, Double for floating point ones
+    @Override
+    public CompletableFuture<Number> sum(String column) {
+        return derive(aggregate(Aggregate.SUM, column), value -> (Number) value.orElse(0L));
+    }
+
+    @Override
+    public CompletableFuture<OptionalDouble> avg(String column) {
+        return derive(aggregate(Aggregate.AVG, column),
+                value -> value.map(avg -> OptionalDouble.of((Double) avg)).orElse(OptionalDouble.empty()));
+    }
+
+    // MIN and MAX keep the column's own type, so text, date and timestamp columns work too
+    @Override
+    public CompletableFuture<Optional<Object>> min(String column) {
+        return aggregate(Aggregate.MIN, column);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Object>> max(String column) {
+        return aggregate(Aggregate.MAX, column);
+    }
+
+    @Override
+    public CompletableFuture<Long> countDistinct(String column) {
+        return derive(aggregate(Aggregate.COUNT_DISTINCT, column), value -> (Long) value.orElse(0L));
+    }
+
+    // Keys are the group value, or a List of values when grouping by several columns.
+    // Groups keep the order of orderBy(); order by the aggregate with orderBy("agg_value").
+    // Across shards the per-shard groups are merged first and then sorted again.
+    @Override
+    public CompletableFuture<Map<Object, Object>> aggregateBy(Aggregate aggregate, String column) {
+        if (groupByColumns.isEmpty()) {
+            throw new IllegalStateException("aggregateBy() needs at least one groupBy() column");
+        }
+
+        DatabaseProvider target = target();
+        Comparator<Map<String, Object>> order = null;
+        if (target instanceof ShardedProvider) {
+            if (!isMergeable(aggregate)) {
+                throw new UnsupportedOperationException(aggregate + " cannot be combined across shards, query with a shard key");
+            }
+            if (!havingConditions.isEmpty() || limitCount != null || offsetCount != null) {
+                throw new UnsupportedOperationException("HAVING, LIMIT and OFFSET on grouped queries need a shard key");
+            }
+            order = orderComparator();
+        }
+
+        String sql = buildAggregateSQL(aggregate, column);
+        Object[] params = selectParameters();
+        List<String> groups = List.copyOf(groupByColumns);
+        Comparator<Map<String, Object>> mergedOrder = order;
+        return afterBufferedWrites(() -> read("aggregate", sql, params,
+                () -> derive(target.query(sql, params), rows -> toGroups(aggregate, rows, groups, mergedOrder))));
+    }
+
+    @Override
+    public QueryBuilder after(String pageToken) {
+        this.pageToken = pageToken;
+        return this;
+    }
+
+    @Override
+    public CompletableFuture<Page> paginate(String orderColumn, int pageSize) {
+        return paginate(orderColumn, DEFAULT_TIEBREAKER_COLUMN, pageSize);
+    }
+
+    // Seeks past the last row of the previous page instead of scanning OFFSET rows, so every page
+    // costs the same index range scan. The direction comes from orderBy(), ASC by default.
+    @Override
+    public CompletableFuture<Page> paginate(String orderColumn, String tiebreakerColumn, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+
+        String direction = orderByDirection.equalsIgnoreCase("DESC") ? "DESC" : "ASC";
+
+        if (pageToken != null) {
+            Cursor cursor = Cursor.decode(pageToken, orderColumn, tiebreakerColumn);
+            whereConditions.add(new Condition("(" + orderColumn + ", " + tiebreakerColumn + ")",
+                    direction.equals("DESC") ? "<" : ">", 2));
+            parameters.add(cursor.orderValue);
+            parameters.add(cursor.tiebreakerValue);
         }
-        return provider.query(sql, parameters.toArray())
-                .thenApply(results -> ((Number) results.get(0).get("count")).longValue());
+
+        // Both columns sort the same way so the row-value comparison follows the index order
+        orderByColumn = orderColumn + " " + direction + ", " + tiebreakerColumn;
+        orderByDirection = direction;
+        limitCount = pageSize + 1;
+        offsetCount = null;
+
+        String sql = buildSelectSQL();
+        Object[] params = selectParameters();
+        return afterBufferedWrites(() -> derive(fetchRows(sql, params), rows -> toPage(rows, orderColumn, tiebreakerColumn, pageSize)));
+    }
+
+    @Override
+    public QueryBuilder fetchSize(int fetchSize) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("Fetch size must be positive");
+        }
+
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    @Override
+    public CompletableFuture<Long> stream(Consumer<Map<String, Object>> rowConsumer) {
+        String sql = buildSelectSQL();
+        Object[] params = selectParameters();
+        DatabaseProvider target = target();
+        return afterBufferedWrites(() -> scoped(() -> target.stream(sql, params, fetchSize, rowConsumer)));
     }
 
     @Override
@@ -124,16 +349,34 @@ public class QueryBuilderImpl implements QueryBuilder {
 
     @Override
     public QueryBuilder value(String column, Object value) {
+        if (!values.containsKey(column)) {
+            valueColumns.add(column);
+        }
         values.put(column, value);
+        incrementColumns.remove(column);
         return this;
     }
 
     @Override
     public QueryBuilder values(Map<String, Object> values) {
-        this.values.putAll(values);
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            value(entry.getKey(), entry.getValue());
+        }
         return this;
     }
 
+    @Override
+    public CompletableFuture<Integer> insertMany(List<Map<String, Object>> rows) {
+        operation = "INSERT";
+        return executeMany("INSERT_MANY", rows, List.of());
+    }
+
+    @Override
+    public CompletableFuture<Integer> upsertMany(List<Map<String, Object>> rows, String... keyColumns) {
+        operation = "INSERT_OR_UPDATE";
+        return executeMany("UPSERT_MANY", rows, List.of(keyColumns));
+    }
+
     @Override
     public QueryBuilder update() {
         operation = "UPDATE";
@@ -147,14 +390,14 @@ public class QueryBuilderImpl implements QueryBuilder {
 
     @Override
     public QueryBuilder increment(String column, Number amount) {
-        values.put(column, column + " + " + amount);
+        value(column, amount);
+        incrementColumns.add(column);
         return this;
     }
 
     @Override
     public QueryBuilder decrement(String column, Number amount) {
-        values.put(column, column + " - " + amount);
-        return this;
+        return increment(column, negate(amount));
     }
 
     @Override
@@ -165,34 +408,110 @@ public class QueryBuilderImpl implements QueryBuilder {
 
     @Override
     public CompletableFuture<Integer> execute() {
+        if (bufferWrite()) {
+            return CompletableFuture.completedFuture(1);
+        }
+
         String sql = buildSQL();
         Object[] params = buildParameters();
-        return provider.update(sql, params);
+        DatabaseProvider target = target();
+        return invalidateAfter(scoped(() -> target.update(sql, params)));
     }
 
     @Override
     public CompletableFuture<Void> executeVoid() {
+        if (bufferWrite()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
         String sql = buildSQL();
         Object[] params = buildParameters();
-        return provider.execute(sql, params);
+        DatabaseProvider target = target();
+        return invalidateAfter(scoped(() -> target.execute(sql, params)));
+    }
+
+    @Override
+    public PreparedQuery prepare() {
+        // Parameters are bound per call, too late to pick a shard, so only tables without a shard
+        // key can be prepared; like their other statements they run on the first shard
+        DatabaseProvider target = provider;
+        if (provider instanceof ShardedProvider sharded) {
+            target = sharded.routeKey(tableName, null, null);
+            if (target == null) {
+                throw new UnsupportedOperationException("Prepared queries on sharded table " + tableName
+                        + " cannot be routed, use table(...) with a shard key where() instead");
+            }
+        }
+
+        String sql = buildSQL();
+        return new PreparedQueryImpl(tableName, sql, !operation.equals("SELECT"), target, queryCache);
     }
 
     @Override
     public QueryBuilder batch() {
-        // Implementation for batch operations
+        return batch(DEFAULT_BATCH_CHUNK_SIZE);
+    }
+
+    @Override
+    public QueryBuilder batch(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Batch chunk size must be positive");
+        }
+
+        batchEntries.clear();
+        batchChunkSize = chunkSize;
         return this;
     }
 
     @Override
     public QueryBuilder addBatch() {
-        // Implementation for adding to batch
+        batchEntries.add(new BatchEntry(buildSQL(), buildParameters(), target()));
+
+        values = new HashMap<>();
+        valueColumns = new ArrayList<>();
+        incrementColumns = new ArrayList<>();
+        whereConditions = new ArrayList<>();
+        parameters = new ArrayList<>();
         return this;
     }
 
     @Override
     public CompletableFuture<int[]> executeBatch() {
-        // Implementation for batch execution
-        return CompletableFuture.completedFuture(new int[0]);
+        if (batchEntries.isEmpty()) {
+            return CompletableFuture.completedFuture(new int[0]);
+        }
+
+        // Rows are grouped by their target and SQL so each distinct statement runs as one JDBC batch
+        Map<DatabaseProvider, Map<String, List<Integer>>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < batchEntries.size(); i++) {
+            BatchEntry entry = batchEntries.get(i);
+            groups.computeIfAbsent(entry.target, target -> new LinkedHashMap<>())
+                    .computeIfAbsent(entry.sql, sql -> new ArrayList<>()).add(i);
+        }
+
+        int[] results = new int[batchEntries.size()];
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        for (Map.Entry<DatabaseProvider, Map<String, List<Integer>>> targetGroup : groups.entrySet()) {
+            for (Map.Entry<String, List<Integer>> group : targetGroup.getValue().entrySet()) {
+                List<Integer> indices = group.getValue();
+                List<Object[]> parameterSets = new ArrayList<>(indices.size());
+                for (int index : indices) {
+                    parameterSets.add(batchEntries.get(index).parameters);
+                }
+
+                futures.add(scoped(() -> targetGroup.getKey().batch(group.getKey(), parameterSets, batchChunkSize))
+                        .thenAccept(counts -> {
+                            for (int i = 0; i < counts.length; i++) {
+                                results[indices.get(i)] = counts[i];
+                            }
+                        }));
+            }
+        }
+
+        batchEntries.clear();
+        return invalidateAfter(CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> results));
     }
 
     @Override
@@ -222,7 +541,499 @@ public class QueryBuilderImpl implements QueryBuilder {
         }
     }
 
+    private boolean isCached() {
+        return cacheTtl != null && queryCache != null;
+    }
+
+    private boolean isCoalesced() {
+        return coalesce && singleFlight != null;
+    }
+
+    // Lookup order is result cache, then in-flight coalescing, then the provider.
+    // Primary reads skip both since either could hand back a result loaded from a replica.
+    private <R> CompletableFuture<R> read(String kind, String sql, Object[] params, Supplier<CompletableFuture<R>> loader) {
+        if (readFromPrimary || (!isCached() && !isCoalesced())) {
+            return scoped(loader);
+        }
+
+        // A coalesced load runs under the deadline of the caller that started it
+        QueryKey key = new QueryKey(tableName, kind, sql, params);
+        Supplier<CompletableFuture<R>> scopedLoader = () -> scoped(loader);
+        Supplier<CompletableFuture<R>> source = isCoalesced() ? () -> singleFlight.execute(key, scopedLoader) : scopedLoader;
+        return isCached() ? queryCache.get(key, cacheTtl, source) : source.get();
+    }
+
+    private CompletableFuture<List<Map<String, Object>>> fetchRows(String sql, Object[] params) {
+        DatabaseProvider target = target();
+        Supplier<CompletableFuture<List<Map<String, Object>>>> loader = target instanceof ShardedProvider sharded
+                ? gather(sharded, sql, params)
+                : () -> target.query(sql, params);
+
+        if (readFromPrimary || (!isCached() && !isCoalesced())) {
+            return scoped(loader);
+        }
+        return read("rows", sql, params, () -> loader.get().thenApply(QueryBuilderImpl::readOnly));
+    }
+
+    // Sharded tables run on the shard owning the where()/value() shard key. Without one the
+    // sharded provider fans reads out and broadcasts updates and deletes.
+    private DatabaseProvider target() {
+        if (provider instanceof ShardedProvider sharded) {
+            boolean insert = operation.equals("INSERT") || operation.equals("INSERT_OR_UPDATE");
+            DatabaseProvider shard = sharded.route(tableName, values, whereConditions, parameters, insert);
+            return shard != null ? shard : sharded;
+        }
+        return provider;
+    }
+
+    // Every shard is asked for its first offset + limit rows, which the merge then sorts and slices
+    private Supplier<CompletableFuture<List<Map<String, Object>>>> gather(ShardedProvider sharded, String sql, Object[] params) {
+        if (orderByColumn == null && limitCount == null && offsetCount == null) {
+            return () -> sharded.query(sql, params);
+        }
+
+        Integer limit = limitCount;
+        Integer offset = offsetCount;
+        if (limit != null && offset != null) {
+            limitCount = limit + offset;
+        }
+        offsetCount = null;
+        String shardSql = buildSelectSQL();
+        limitCount = limit;
+        offsetCount = offset;
+
+        Comparator<Map<String, Object>> order = orderComparator();
+        return () -> sharded.gather(shardSql, params, order, limit, offset);
+    }
+
+    // Mirrors the ORDER BY clause, including the "col DIR, tiebreaker" form paginate() produces
+    private Comparator<Map<String, Object>> orderComparator() {
+        if (orderByColumn == null) {
+            return null;
+        }
+
+        Comparator<Map<String, Object>> order = null;
+        String[] parts = orderByColumn.split(",");
+        for (int i = 0; i < parts.length; i++) {
+            String[] tokens = parts[i].trim().split("\\s+");
+            String column = tokens[0];
+            String direction = i == parts.length - 1 ? orderByDirection : tokens.length > 1 ? tokens[1] : "ASC";
+
+            Comparator<Map<String, Object>> next = (a, b) -> compareValues(a.get(column), b.get(column));
+            if (direction.equalsIgnoreCase("DESC")) {
+                next = next.reversed();
+            }
+            order = order == null ? next : order.thenComparing(next);
+        }
+        return order;
+    }
+
+    // NULLs sort first, as they do in ascending MySQL and SQLite order
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        if (a instanceof Number x && b instanceof Number y && a.getClass() != b.getClass()) {
+            return Double.compare(x.doubleValue(), y.doubleValue());
+        }
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    // Applies the primary pin, queue priority and query deadline to the provider calls made inside call
+    private <R> R scoped(Supplier<R> call) {
+        Supplier<R> timed = timeout != null ? () -> ConnectionManager.withQueryTimeout(timeout.toMillis(), call) : call;
+        Supplier<R> prioritized = priority != null ? () -> ConnectionManager.withPriority(priority, timed) : timed;
+        return readFromPrimary ? ConnectionManager.onPrimary(prioritized) : prioritized.get();
+    }
+
+    // One extra row is fetched to tell whether another page follows
+    private static Page toPage(List<Map<String, Object>> rows, String orderColumn, String tiebreakerColumn, int pageSize) {
+        if (rows.size() <= pageSize) {
+            return new Page(rows, null);
+        }
+
+        Map<String, Object> last = rows.get(pageSize - 1);
+        Cursor cursor = new Cursor(orderColumn, tiebreakerColumn, last.get(orderColumn), last.get(tiebreakerColumn));
+        return new Page(rows.subList(0, pageSize), cursor.encode());
+    }
+
+    // Rows with the same columns share multi-row statements sized to the driver's placeholder limit;
+    // full statements go out as one JDBC batch, the remainder as a single shorter statement
+    private CompletableFuture<Integer> executeMany(String kind, List<Map<String, Object>> rows, List<String> keyColumns) {
+        if (rows.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+
+        if (!(provider instanceof ShardedProvider sharded)) {
+            return invalidateAfter(scoped(() -> executeMany(provider, kind, rows, keyColumns)));
+        }
+
+        Map<DatabaseProvider, List<Map<String, Object>>> rowsByShard = new LinkedHashMap<>();
+        for (Map<String, Object> row : rows) {
+            DatabaseProvider shard = sharded.route(tableName, row, List.of(), List.of(), true);
+            rowsByShard.computeIfAbsent(shard, s -> new ArrayList<>()).add(row);
+        }
+
+        CompletableFuture<Integer> total = CompletableFuture.completedFuture(0);
+        for (Map.Entry<DatabaseProvider, List<Map<String, Object>>> entry : rowsByShard.entrySet()) {
+            total = total.thenCombine(scoped(() -> executeMany(entry.getKey(), kind, entry.getValue(), keyColumns)), Integer::sum);
+        }
+        return invalidateAfter(total);
+    }
+
+    private CompletableFuture<Integer> executeMany(DatabaseProvider target, String kind,
+                                                   List<Map<String, Object>> rows, List<String> keyColumns) {
+        Map<Set<String>, List<Map<String, Object>>> groups = new LinkedHashMap<>();
+        for (Map<String, Object> row : rows) {
+            groups.computeIfAbsent(Set.copyOf(row.keySet()), columns -> new ArrayList<>()).add(row);
+        }
+
+        SqlDialect dialect = target.getDialect();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+
+        for (List<Map<String, Object>> group : groups.values()) {
+            List<String> columns = new ArrayList<>(group.get(0).keySet());
+            if (columns.isEmpty()) {
+                throw new IllegalArgumentException("Rows must contain at least one column");
+            }
+
+            int rowsPerStatement = Math.max(1, Math.min(MAX_ROWS_PER_STATEMENT, dialect.getMaxParameters() / columns.size()));
+            int fullStatements = group.size() / rowsPerStatement;
+
+            if (fullStatements > 0) {
+                String sql = multiRowSQL(kind, dialect, columns, keyColumns, rowsPerStatement);
+                List<Object[]> parameterSets = new ArrayList<>(fullStatements);
+                for (int i = 0; i < fullStatements; i++) {
+                    parameterSets.add(rowParameters(group, columns, i * rowsPerStatement, rowsPerStatement));
+                }
+
+                int statementsPerBatch = Math.max(1, batchChunkSize / rowsPerStatement);
+                futures.add(target.batch(sql, parameterSets, statementsPerBatch).thenApply(QueryBuilderImpl::sum));
+            }
+
+            int remainder = group.size() % rowsPerStatement;
+            if (remainder > 0) {
+                String sql = multiRowSQL(kind, dialect, columns, keyColumns, remainder);
+                futures.add(target.update(sql, rowParameters(group, columns, fullStatements * rowsPerStatement, remainder)));
+            }
+        }
+
+        CompletableFuture<Integer> total = CompletableFuture.completedFuture(0);
+        for (CompletableFuture<Integer> future : futures) {
+            total = total.thenCombine(future, Integer::sum);
+        }
+        return total;
+    }
+
+    private String multiRowSQL(String kind, SqlDialect dialect, List<String> columns, List<String> keyColumns, int rows) {
+        QueryShape shape = new QueryShape(kind, dialect, tableName, List.of(), List.of(), columns,
+                null, null, null, null, List.of(), List.of(), List.of(), keyColumns, rows);
+
+        return SHAPE_CACHE.get(shape, () -> {
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(tableName)
+                    .append(" (").append(String.join(", ", columns)).append(") VALUES ");
+
+            String row = "(" + "?,".repeat(columns.size() - 1) + "?)";
+            for (int i = 0; i < rows; i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append(row);
+            }
+
+            if (kind.equals("UPSERT_MANY")) {
+                dialect.appendUpsert(sql, columns, keyColumns, List.of());
+            }
+            return sql.toString();
+        });
+    }
+
+    private static Object[] rowParameters(List<Map<String, Object>> rows, List<String> columns, int from, int count) {
+        Object[] params = new Object[count * columns.size()];
+        int index = 0;
+        for (int i = from; i < from + count; i++) {
+            Map<String, Object> row = rows.get(i);
+            for (String column : columns) {
+                params[index++] = row.get(column);
+            }
+        }
+        return params;
+    }
+
+    private static Number negate(Number amount) {
+        if (amount instanceof BigDecimal decimal) {
+            return decimal.negate();
+        }
+        if (amount instanceof Double || amount instanceof Float) {
+            return -amount.doubleValue();
+        }
+        return -amount.longValue();
+    }
+
+    // Drivers may report SUCCESS_NO_INFO (-2) for batched statements
+    private static int sum(int[] counts) {
+        int total = 0;
+        for (int count : counts) {
+            total += Math.max(count, 0);
+        }
+        return total;
+    }
+
+    private boolean bufferWrite() {
+        return writeBehind != null && operation.equals("INSERT_OR_UPDATE") && incrementColumns.isEmpty()
+                && writeBehind.handles(tableName) && writeBehind.buffer(tableName, values);
+    }
+
+    private CompletableFuture<List<Map<String, Object>>> withBufferedWrites(CompletableFuture<List<Map<String, Object>>> rows) {
+        if (writeBehind == null || !writeBehind.handles(tableName)) {
+            return rows;
+        }
+
+        List<Condition> conditions = List.copyOf(whereConditions);
+        List<Object> params = new ArrayList<>(parameters);
+        return derive(rows, results -> writeBehind.overlay(tableName, conditions, params, results));
+    }
+
+    // Only get() and first() overlay buffered rows. Every other read of a write-behind table waits
+    // for the buffer to be flushed while the table has rows in it, so all reads agree.
+    private <R> CompletableFuture<R> afterBufferedWrites(Supplier<CompletableFuture<R>> read) {
+        if (writeBehind == null || !writeBehind.hasPending(tableName)) {
+            return read.get();
+        }
+
+        ConnectionManager.Scope scope = ConnectionManager.captureScope();
+        return writeBehind.flush().thenCompose(done -> scope.apply(read));
+    }
+
+    private CompletableFuture<Optional<Object>> aggregate(Aggregate aggregate, String column) {
+        if (!groupByColumns.isEmpty()) {
+            throw new IllegalStateException("Grouped queries return one value per group, use aggregateBy()");
+        }
+
+        DatabaseProvider target = target();
+        if (target instanceof ShardedProvider && !isMergeable(aggregate)) {
+            throw new UnsupportedOperationException(aggregate + " cannot be combined across shards, query with a shard key");
+        }
+
+        String sql = buildAggregateSQL(aggregate, column);
+        Object[] params = selectParameters();
+
+        // A gathered query returns one row per shard, folded here into a single value
+        return afterBufferedWrites(() -> read("aggregate", sql, params, () -> derive(target.query(sql, params), rows -> {
+            Object result = null;
+            for (Map<String, Object> row : rows) {
+                result = combine(aggregate, result, row.get(AGGREGATE_ALIAS));
+            }
+            return Optional.ofNullable(result);
+        })));
+    }
+
+    private static boolean isMergeable(Aggregate aggregate) {
+        return aggregate != Aggregate.AVG && aggregate != Aggregate.COUNT_DISTINCT;
+    }
+
+    private static Object combine(Aggregate aggregate, Object current, Object value) {
+        Object next = aggregateValue(aggregate, value);
+        if (next == null) {
+            return current;
+        }
+        if (current == null) {
+            return next;
+        }
+
+        return switch (aggregate) {
+            case MIN -> compareValues(current, next) <= 0 ? current : next;
+            case MAX -> compareValues(current, next) >= 0 ? current : next;
+            case SUM, COUNT -> add((Number) current, (Number) next);
+            default -> throw new UnsupportedOperationException(aggregate + " cannot be combined across shards");
+        };
+    }
+
+    private static Object aggregateValue(Aggregate aggregate, Object value) {
+        if (value == null) {
+            return null;
+        }
+
+        return switch (aggregate) {
+            case SUM -> exactNumber((Number) value);
+            case AVG -> ((Number) value).doubleValue();
+            case COUNT, COUNT_DISTINCT -> ((Number) value).longValue();
+            case MIN, MAX -> value;
+        };
+    }
+
+    // MySQL returns SUM over integer columns as a DECIMAL with scale 0, which fits a long
+    private static Number exactNumber(Number value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return value.longValue();
+        }
+        if (value instanceof BigInteger big) {
+            return big.bitLength() < 64 ? big.longValue() : new BigDecimal(big);
+        }
+        if (value instanceof BigDecimal decimal) {
+            if (decimal.scale() <= 0 && decimal.compareTo(LONG_MIN) >= 0 && decimal.compareTo(LONG_MAX) <= 0) {
+                return decimal.longValueExact();
+            }
+            return decimal;
+        }
+        return value.doubleValue();
+    }
+
+    private static Number add(Number a, Number b) {
+        if (a instanceof Long x && b instanceof Long y) {
+            long sum = x + y;
+            if (((x ^ sum) & (y ^ sum)) >= 0) {
+                return sum;
+            }
+        } else if (a instanceof Double || b instanceof Double) {
+            return a.doubleValue() + b.doubleValue();
+        }
+        return exactNumber(toBigDecimal(a).add(toBigDecimal(b)));
+    }
+
+    private static BigDecimal toBigDecimal(Number value) {
+        return value instanceof BigDecimal decimal ? decimal : BigDecimal.valueOf(value.longValue());
+    }
+
+    // With an order, the merged groups are sorted again on their group columns and combined value
+    private static Map<Object, Object> toGroups(Aggregate aggregate, List<Map<String, Object>> rows, List<String> groups,
+                                                Comparator<Map<String, Object>> order) {
+        Map<Object, Object> result = new LinkedHashMap<>();
+        Map<Object, Map<String, Object>> groupRows = order != null ? new HashMap<>() : null;
+        for (Map<String, Object> row : rows) {
+            Object key = groupKey(row, groups);
+            result.put(key, combine(aggregate, result.get(key), row.get(AGGREGATE_ALIAS)));
+            if (groupRows != null) {
+                groupRows.putIfAbsent(key, row);
+            }
+        }
+
+        if (groupRows == null) {
+            return Collections.unmodifiableMap(result);
+        }
+
+        List<Map<String, Object>> merged = new ArrayList<>(result.size());
+        for (Map.Entry<Object, Object> entry : result.entrySet()) {
+            Map<String, Object> row = new HashMap<>(groupRows.get(entry.getKey()));
+            row.put(AGGREGATE_ALIAS, entry.getValue());
+            merged.add(row);
+        }
+        merged.sort(order);
+
+        Map<Object, Object> sorted = new LinkedHashMap<>();
+        for (Map<String, Object> row : merged) {
+            sorted.put(groupKey(row, groups), row.get(AGGREGATE_ALIAS));
+        }
+        return Collections.unmodifiableMap(sorted);
+    }
+
+    private static Object groupKey(Map<String, Object> row, List<String> groups) {
+        if (groups.size() == 1) {
+            return row.get(groups.get(0));
+        }
+
+        Object[] values = new Object[groups.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = row.get(groups.get(i));
+        }
+        return Arrays.asList(values);
+    }
+
+    private Object[] selectParameters() {
+        Object[] params = new Object[parameters.size() + havingParameters.size()];
+        int index = 0;
+        for (Object parameter : parameters) {
+            params[index++] = parameter;
+        }
+        for (Object parameter : havingParameters) {
+            params[index++] = parameter;
+        }
+        return params;
+    }
+
+    // Gathered counts come back as one row per shard
+    private CompletableFuture<Long> countRows(String sql, Object[] params) {
+        return derive(target().query(sql, params), results -> {
+            long count = 0;
+            for (Map<String, Object> row : results) {
+                count += ((Number) row.get("count")).longValue();
+            }
+            return count;
+        });
+    }
+
+    // Cached and coalesced rows are shared between callers, so they are handed out read-only
+    private static List<Map<String, Object>> readOnly(List<Map<String, Object>> rows) {
+        List<Map<String, Object>> copy = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            copy.add(Collections.unmodifiableMap(row));
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+    private <R> CompletableFuture<R> invalidateAfter(CompletableFuture<R> future) {
+        if (queryCache == null || operation.equals("SELECT")) {
+            return future;
+        }
+        return forwardCancel(future, future.whenComplete((result, error) -> queryCache.invalidate(tableName)));
+    }
+
+    private static <T, R> CompletableFuture<R> derive(CompletableFuture<T> source, Function<T, R> mapper) {
+        return forwardCancel(source, source.thenApply(mapper));
+    }
+
+    // Dependent futures do not pass cancel() upstream, but the provider future has to see it to
+    // cancel its statement. Cached and coalesced loads hand out per-caller futures, so a cancel stops there.
+    private static <T, R> CompletableFuture<R> forwardCancel(CompletableFuture<T> source, CompletableFuture<R> derived) {
+        derived.whenComplete((result, error) -> {
+            if (derived.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return derived;
+    }
+
+    private QueryShape shape(String kind) {
+        return new QueryShape(kind, provider.getDialect(), tableName, selectColumns, whereConditions, valueColumns,
+                orderByColumn, orderByDirection, limitCount, offsetCount, groupByColumns, havingConditions,
+                incrementColumns, List.of(), 1);
+    }
+
     private String buildSelectSQL() {
+        return SHAPE_CACHE.get(shape("SELECT"), this::renderSelectSQL);
+    }
+
+    private String buildSQL() {
+        return switch (operation) {
+            case "INSERT" -> SHAPE_CACHE.get(shape(operation), this::buildInsertSQL);
+            case "INSERT_OR_UPDATE" -> SHAPE_CACHE.get(shape(operation), this::buildInsertOrUpdateSQL);
+            case "UPDATE" -> SHAPE_CACHE.get(shape(operation), this::buildUpdateSQL);
+            case "DELETE" -> SHAPE_CACHE.get(shape(operation), this::buildDeleteSQL);
+            default -> buildSelectSQL();
+        };
+    }
+
+    private String buildAggregateSQL(Aggregate aggregate, String column) {
+        QueryShape shape = new QueryShape("AGGREGATE", provider.getDialect(), tableName,
+                List.of(aggregate.expression(column)), whereConditions, List.of(), orderByColumn, orderByDirection,
+                limitCount, offsetCount, groupByColumns, havingConditions, List.of(), List.of(), 1);
+
+        return SHAPE_CACHE.get(shape, () -> {
+            StringBuilder sql = new StringBuilder("SELECT ");
+            for (String group : groupByColumns) {
+                sql.append(group).append(", ");
+            }
+            sql.append(aggregate.expression(column)).append(" AS ").append(AGGREGATE_ALIAS);
+            sql.append(" FROM ").append(tableName);
+            appendWhere(sql);
+            appendGroupBy(sql);
+            appendOrderAndLimit(sql);
+            return sql.toString();
+        });
+    }
+
+    private String renderSelectSQL() {
         StringBuilder sql = new StringBuilder("SELECT ");
 
         if (selectColumns.isEmpty()) {
@@ -232,11 +1043,24 @@ public class QueryBuilderImpl implements QueryBuilder {
         }
 
         sql.append(" FROM ").append(tableName);
+        appendWhere(sql);
+        appendGroupBy(sql);
+        appendOrderAndLimit(sql);
+        return sql.toString();
+    }
 
-        if (!whereConditions.isEmpty()) {
-            sql.append(" WHERE ").append(String.join(" AND ", whereConditions));
+    private void appendGroupBy(StringBuilder sql) {
+        if (!groupByColumns.isEmpty()) {
+            sql.append(" GROUP BY ").append(String.join(", ", groupByColumns));
         }
 
+        for (int i = 0; i < havingConditions.size(); i++) {
+            sql.append(i == 0 ? " HAVING " : " AND ");
+            havingConditions.get(i).appendTo(sql);
+        }
+    }
+
+    private void appendOrderAndLimit(StringBuilder sql) {
         if (orderByColumn != null) {
             sql.append(" ORDER BY ").append(orderByColumn).append(" ").append(orderByDirection);
         }
@@ -248,27 +1072,20 @@ public class QueryBuilderImpl implements QueryBuilder {
         if (offsetCount != null) {
             sql.append(" OFFSET ").append(offsetCount);
         }
-
-        return sql.toString();
     }
 
-    private String buildSQL() {
-        return switch (operation) {
-            case "INSERT" -> buildInsertSQL();
-            case "INSERT_OR_UPDATE" -> buildInsertOrUpdateSQL();
-            case "UPDATE" -> buildUpdateSQL();
-            case "DELETE" -> buildDeleteSQL();
-            default -> buildSelectSQL();
-        };
+    private String buildCountSQL() {
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) as count FROM ").append(tableName);
+        appendWhere(sql);
+        return sql.toString();
     }
 
     private String buildInsertSQL() {
         StringBuilder sql = new StringBuilder("INSERT INTO ").append(tableName);
 
-        if (!values.isEmpty()) {
-            List<String> columns = new ArrayList<>(values.keySet());
-            sql.append(" (").append(String.join(", ", columns)).append(")");
-            sql.append(" VALUES (").append("?,".repeat(columns.size()));
+        if (!valueColumns.isEmpty()) {
+            sql.append(" (").append(String.join(", ", valueColumns)).append(")");
+            sql.append(" VALUES (").append("?,".repeat(valueColumns.size()));
             sql.setLength(sql.length() - 1);
             sql.append(")");
         }
@@ -277,49 +1094,77 @@ public class QueryBuilderImpl implements QueryBuilder {
     }
 
     private String buildInsertOrUpdateSQL() {
-        return buildInsertSQL() + " ON DUPLICATE KEY UPDATE " +
-                String.join(", ", values.keySet().stream()
-                        .map(col -> col + " = VALUES(" + col + ")")
-                        .toList());
+        StringBuilder sql = new StringBuilder(buildInsertSQL());
+        provider.getDialect().appendUpsert(sql, valueColumns, List.of(), incrementColumns);
+        return sql.toString();
     }
 
     private String buildUpdateSQL() {
         StringBuilder sql = new StringBuilder("UPDATE ").append(tableName);
 
-        if (!values.isEmpty()) {
-            sql.append(" SET ").append(String.join(", ",
-                    values.keySet().stream().map(col -> col + " = ?").toList()));
-        }
-
-        if (!whereConditions.isEmpty()) {
-            sql.append(" WHERE ").append(String.join(" AND ", whereConditions));
+        if (!valueColumns.isEmpty()) {
+            sql.append(" SET ");
+            for (int i = 0; i < valueColumns.size(); i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                String column = valueColumns.get(i);
+                sql.append(column).append(" = ");
+                if (incrementColumns.contains(column)) {
+                    sql.append(column).append(" + ");
+                }
+                sql.append('?');
+            }
         }
 
+        appendWhere(sql);
         return sql.toString();
     }
 
     private String buildDeleteSQL() {
         StringBuilder sql = new StringBuilder("DELETE FROM ").append(tableName);
+        appendWhere(sql);
+        return sql.toString();
+    }
 
-        if (!whereConditions.isEmpty()) {
-            sql.append(" WHERE ").append(String.join(" AND ", whereConditions));
+    private void appendWhere(StringBuilder sql) {
+        for (int i = 0; i < whereConditions.size(); i++) {
+            sql.append(i == 0 ? " WHERE " : " AND ");
+            whereConditions.get(i).appendTo(sql);
         }
-
-        return sql.toString();
     }
 
     private Object[] buildParameters() {
-        List<Object> allParams = new ArrayList<>();
+        boolean withValues = !operation.equals("SELECT") && !operation.equals("DELETE");
+        boolean withConditions = !operation.equals("INSERT") && !operation.equals("INSERT_OR_UPDATE");
 
-        if (operation.equals("INSERT") || operation.equals("INSERT_OR_UPDATE")) {
-            allParams.addAll(values.values());
-        } else if (operation.equals("UPDATE")) {
-            allParams.addAll(values.values());
-            allParams.addAll(parameters);
-        } else {
-            allParams.addAll(parameters);
+        Object[] params = new Object[(withValues ? valueColumns.size() : 0) + (withConditions ? parameters.size() : 0)];
+        int index = 0;
+
+        if (withValues) {
+            for (String column : valueColumns) {
+                params[index++] = values.get(column);
+            }
+        }
+
+        if (withConditions) {
+            for (Object parameter : parameters) {
+                params[index++] = parameter;
+            }
         }
 
-        return allParams.toArray();
+        return params;
+    }
+
+    private static class BatchEntry {
+        final String sql;
+        final Object[] parameters;
+        final DatabaseProvider target;
+
+        BatchEntry(String sql, Object[] parameters, DatabaseProvider target) {
+            this.sql = sql;
+            this.parameters = parameters;
+            this.target = target;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,161 @@
+package de.tecca.eclipse.database;
+
+import de.tecca.eclipse.api.database.QueryCacheStats;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public class QueryCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final LinkedHashMap<QueryKey, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Set<QueryKey>> keysByTable = new HashMap<>();
+    private final Map<String, AtomicLong> tableGenerations = new ConcurrentHashMap<>();
+    private volatile int maxEntries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public QueryCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public QueryCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    // Results are only stored if no write hit the table while the query was running
+    <T> CompletableFuture<T> get(QueryKey key, Duration ttl, Supplier<CompletableFuture<T>> loader) {
+        String table = key.table;
+        T cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        misses.increment();
+        long generation = generation(table).get();
+
+        return loader.get().thenApply(result -> {
+            if (result != null && generation(table).get() == generation) {
+                store(key, result, ttl);
+            }
+            return result;
+        });
+    }
+
+    public void invalidate(String table) {
+        generation(table).incrementAndGet();
+
+        synchronized (this) {
+            Set<QueryKey> keys = keysByTable.remove(table);
+            if (keys != null) {
+                for (QueryKey key : keys) {
+                    if (entries.remove(key) != null) {
+                        invalidations.increment();
+                    }
+                }
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        for (String table : keysByTable.keySet()) {
+            generation(table).incrementAndGet();
+        }
+        invalidations.add(entries.size());
+        entries.clear();
+        keysByTable.clear();
+    }
+
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        evictOverflow();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public QueryCacheStats getStats() {
+        return new QueryCacheStats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(), size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized <T> T lookup(QueryKey key) {
+        CacheEntry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.expiresAt - System.nanoTime() <= 0) {
+            remove(key);
+            evictions.increment();
+            return null;
+        }
+
+        return (T) entry.value;
+    }
+
+    private synchronized void store(QueryKey key, Object value, Duration ttl) {
+        entries.put(key, new CacheEntry(value, System.nanoTime() + ttl.toNanos()));
+        keysByTable.computeIfAbsent(key.table, table -> new HashSet<>()).add(key);
+        evictOverflow();
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<QueryKey, CacheEntry>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            QueryKey eldest = iterator.next().getKey();
+            iterator.remove();
+            removeTableKey(eldest);
+            evictions.increment();
+        }
+    }
+
+    private void remove(QueryKey key) {
+        entries.remove(key);
+        removeTableKey(key);
+    }
+
+    private void removeTableKey(QueryKey key) {
+        Set<QueryKey> keys = keysByTable.get(key.table);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                keysByTable.remove(key.table);
+            }
+        }
+    }
+
+    // Bumped by every invalidate(); other caches compare it to tell whether their copy is stale
+    long generationOf(String table) {
+        return generation(table).get();
+    }
+
+    private AtomicLong generation(String table) {
+        return tableGenerations.computeIfAbsent(table, t -> new AtomicLong());
+    }
+
+    private static class CacheEntry {
+        final Object value;
+        final long expiresAt;
+
+        CacheEntry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
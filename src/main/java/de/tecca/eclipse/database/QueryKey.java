@@ -0,0 +1,33 @@
+package de.tecca.eclipse.database;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+class QueryKey {
+    final String table;
+    final String kind;
+    final String sql;
+    final Object[] params;
+    private final int hash;
+
+    QueryKey(String table, String kind, String sql, Object[] params) {
+        this.table = table;
+        this.kind = kind;
+        this.sql = sql;
+        this.params = params;
+        this.hash = Objects.hash(table, kind, sql, Arrays.hashCode(params));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof QueryKey other)) return false;
+        return table.equals(other.table) && kind.equals(other.kind)
+                && sql.equals(other.sql) && Arrays.equals(params, other.params);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,81 @@
+package de.tecca.eclipse.database;
+
+import java.util.List;
+import java.util.Objects;
+
+// Structural description of a builder query; equal shapes always render to the same SQL
+final class QueryShape {
+    final String kind;
+    final SqlDialect dialect;
+    final String table;
+    final List<String> selectColumns;
+    final List<Condition> conditions;
+    final List<String> valueColumns;
+    final String orderByColumn;
+    final String orderByDirection;
+    final Integer limit;
+    final Integer offset;
+    final List<String> groupBy;
+    final List<Condition> having;
+    final List<String> incrementColumns;
+    final List<String> keyColumns;
+    final int rows;
+    private final int hash;
+
+    QueryShape(String kind, SqlDialect dialect, String table, List<String> selectColumns, List<Condition> conditions,
+               List<String> valueColumns, String orderByColumn, String orderByDirection,
+               Integer limit, Integer offset, List<String> groupBy, List<Condition> having,
+               List<String> incrementColumns, List<String> keyColumns, int rows) {
+        this.kind = kind;
+        this.dialect = dialect;
+        this.table = table;
+        this.selectColumns = selectColumns;
+        this.conditions = conditions;
+        this.valueColumns = valueColumns;
+        this.orderByColumn = orderByColumn;
+        this.orderByDirection = orderByDirection;
+        this.limit = limit;
+        this.offset = offset;
+        this.groupBy = groupBy;
+        this.having = having;
+        this.incrementColumns = incrementColumns;
+        this.keyColumns = keyColumns;
+        this.rows = rows;
+        this.hash = Objects.hash(kind, dialect, table, selectColumns, conditions, valueColumns,
+                orderByColumn, orderByDirection, limit, offset, groupBy, having, incrementColumns, keyColumns, rows);
+    }
+
+    // Lookups use the builder's live lists; only shapes that get cached are copied
+    QueryShape freeze() {
+        return new QueryShape(kind, dialect, table, List.copyOf(selectColumns), List.copyOf(conditions),
+                List.copyOf(valueColumns), orderByColumn, orderByDirection, limit, offset,
+                List.copyOf(groupBy), List.copyOf(having), List.copyOf(incrementColumns), List.copyOf(keyColumns), rows);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof QueryShape other)) return false;
+        return hash == other.hash
+                && rows == other.rows
+                && kind.equals(other.kind)
+                && dialect == other.dialect
+                && table.equals(other.table)
+                && selectColumns.equals(other.selectColumns)
+                && conditions.equals(other.conditions)
+                && valueColumns.equals(other.valueColumns)
+                && Objects.equals(orderByColumn, other.orderByColumn)
+                && Objects.equals(orderByDirection, other.orderByDirection)
+                && Objects.equals(limit, other.limit)
+                && Objects.equals(offset, other.offset)
+                && groupBy.equals(other.groupBy)
+                && having.equals(other.having)
+                && incrementColumns.equals(other.incrementColumns)
+                && keyColumns.equals(other.keyColumns);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,48 @@
+package de.tecca.eclipse.database;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public class QueryShapeCache {
+
+    private final int maxEntries;
+    private final Map<QueryShape, String> statements = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public QueryShapeCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    String get(QueryShape shape, Supplier<String> renderer) {
+        String sql = statements.get(shape);
+        if (sql != null) {
+            hits.increment();
+            return sql;
+        }
+
+        misses.increment();
+        sql = renderer.get();
+
+        // Shapes come from code, not data, so overflowing means something builds SQL dynamically
+        if (statements.size() >= maxEntries) {
+            statements.clear();
+        }
+        statements.put(shape.freeze(), sql);
+        return sql;
+    }
+
+    public int size() {
+        return statements.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,36 @@
+package de.tecca.eclipse.database;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+final class ResultSets {
+
+    private ResultSets() {
+    }
+
+    // Rows are keyed by column label, so "SELECT x AS y" comes back under y
+    static List<Map<String, Object>> toMaps(ResultSet rs) throws SQLException {
+        List<Map<String, Object>> results = new ArrayList<>();
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        String[] columnNames = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columnNames[i] = metaData.getColumnLabel(i + 1);
+        }
+
+        while (rs.next()) {
+            Map<String, Object> row = new HashMap<>(columnCount * 2);
+            for (int i = 0; i < columnCount; i++) {
+                row.put(columnNames[i], rs.getObject(i + 1));
+            }
+            results.add(row);
+        }
+
+        return results;
+    }
+}
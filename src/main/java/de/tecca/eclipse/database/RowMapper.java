@@ -0,0 +1,299 @@
+package de.tecca.eclipse.database;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class RowMapper<T> {
+
+    private static final int MAX_CACHED_MAPPERS = 1024;
+    private static final Map<MapperKey, RowMapper<?>> cache = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, String> GETTERS = Map.of(
+            long.class, "getLong", int.class, "getInt", double.class, "getDouble", boolean.class, "getBoolean",
+            float.class, "getFloat", short.class, "getShort", byte.class, "getByte", String.class, "getString");
+
+    private final Class<T> type;
+    private final MethodHandle constructor;
+    private final ColumnReader[] readers;
+    private final MethodHandle[] setters;
+    private final boolean record;
+
+    private RowMapper(Class<T> type, MethodHandle constructor, ColumnReader[] readers, MethodHandle[] setters, boolean record) {
+        this.type = type;
+        this.constructor = constructor;
+        this.readers = readers;
+        this.setters = setters;
+        this.record = record;
+    }
+
+    // Bindings depend on the result columns, so mappers are cached per (type, SQL)
+    @SuppressWarnings("unchecked")
+    public static <T> RowMapper<T> of(Class<T> type, String sql, ResultSetMetaData metaData) throws SQLException {
+        MapperKey key = new MapperKey(type, sql);
+        RowMapper<?> mapper = cache.get(key);
+
+        if (mapper == null) {
+            mapper = create(type, metaData);
+            if (cache.size() >= MAX_CACHED_MAPPERS) {
+                cache.clear();
+            }
+            cache.put(key, mapper);
+        }
+
+        return (RowMapper<T>) mapper;
+    }
+
+    public static int getCachedMapperCount() {
+        return cache.size();
+    }
+
+    public List<T> mapAll(ResultSet rs) throws SQLException {
+        List<T> results = new ArrayList<>();
+        while (rs.next()) {
+            results.add(map(rs));
+        }
+        return results;
+    }
+
+    public T map(ResultSet rs) throws SQLException {
+        try {
+            if (record) {
+                return type.cast((Object) constructor.invokeExact(rs));
+            }
+
+            Object instance = constructor.invoke();
+            for (int i = 0; i < readers.length; i++) {
+                readers[i].apply(rs, setters[i], instance);
+            }
+            return type.cast(instance);
+
+        } catch (SQLException | RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to map row to " + type.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static <T> RowMapper<T> create(Class<T> type, ResultSetMetaData metaData) throws SQLException {
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            columns.putIfAbsent(normalize(metaData.getColumnLabel(i)), i);
+        }
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            return type.isRecord() ? createRecordMapper(type, columns, lookup) : createBeanMapper(type, columns, lookup);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Cannot map rows to " + type.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static <T> RowMapper<T> createRecordMapper(Class<T> type, Map<String, Integer> columns, MethodHandles.Lookup lookup)
+            throws ReflectiveOperationException {
+        RecordComponent[] components = type.getRecordComponents();
+        Class<?>[] parameterTypes = new Class<?>[components.length];
+        MethodHandle[] readers = new MethodHandle[components.length];
+
+        for (int i = 0; i < components.length; i++) {
+            parameterTypes[i] = components[i].getType();
+            Integer column = columns.get(normalize(components[i].getName()));
+            readers[i] = readerHandle(new ColumnReader(column != null ? column : -1, parameterTypes[i]), lookup);
+        }
+
+        Constructor<T> canonical = type.getDeclaredConstructor(parameterTypes);
+        canonical.setAccessible(true);
+
+        // Each constructor argument is filtered through its typed column reader, and the reader
+        // arguments are then collapsed into the one ResultSet: (ResultSet) -> record, no boxing
+        MethodHandle filtered = MethodHandles.filterArguments(lookup.unreflectConstructor(canonical), 0, readers);
+        MethodHandle fused = MethodHandles.permuteArguments(filtered,
+                MethodType.methodType(type, ResultSet.class), new int[components.length]);
+        return new RowMapper<>(type, fused.asType(MethodType.methodType(Object.class, ResultSet.class)), null, null, true);
+    }
+
+    // Primitive and String components read straight from the ResultSet getter; everything else
+    // goes through ColumnReader.read for its conversions
+    private static MethodHandle readerHandle(ColumnReader reader, MethodHandles.Lookup lookup) throws ReflectiveOperationException {
+        if (reader.column < 0) {
+            return MethodHandles.dropArguments(MethodHandles.zero(reader.type), 0, ResultSet.class);
+        }
+
+        String getter = GETTERS.get(reader.type);
+        if (getter != null) {
+            MethodHandle handle = lookup.findVirtual(ResultSet.class, getter, MethodType.methodType(reader.type, int.class));
+            return MethodHandles.insertArguments(handle, 1, reader.column);
+        }
+
+        return lookup.findVirtual(ColumnReader.class, "read", MethodType.methodType(Object.class, ResultSet.class))
+                .bindTo(reader)
+                .asType(MethodType.methodType(reader.type, ResultSet.class));
+    }
+
+    private static <T> RowMapper<T> createBeanMapper(Class<T> type, Map<String, Integer> columns, MethodHandles.Lookup lookup)
+            throws ReflectiveOperationException {
+        Constructor<T> noArgs = type.getDeclaredConstructor();
+        noArgs.setAccessible(true);
+        MethodHandle constructor = lookup.unreflectConstructor(noArgs).asType(MethodType.methodType(Object.class));
+
+        List<ColumnReader> readers = new ArrayList<>();
+        List<MethodHandle> setters = new ArrayList<>();
+
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) {
+                    continue;
+                }
+
+                Integer column = columns.remove(normalize(field.getName()));
+                if (column == null) {
+                    continue;
+                }
+
+                MethodHandle setter = findSetter(type, field, lookup);
+                readers.add(new ColumnReader(column, field.getType()));
+                setters.add(setter.asType(MethodType.methodType(void.class, Object.class, field.getType())));
+            }
+        }
+
+        return new RowMapper<>(type, constructor, readers.toArray(new ColumnReader[0]),
+                setters.toArray(new MethodHandle[0]), false);
+    }
+
+    private static MethodHandle findSetter(Class<?> type, Field field, MethodHandles.Lookup lookup) throws IllegalAccessException {
+        String name = field.getName();
+        String setterName = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+
+        try {
+            Method method = type.getMethod(setterName, field.getType());
+            return lookup.unreflect(method);
+        } catch (NoSuchMethodException e) {
+            field.setAccessible(true);
+            return lookup.unreflectSetter(field);
+        }
+    }
+
+    private static String normalize(String name) {
+        return name.replace("_", "").toLowerCase();
+    }
+
+    private static class ColumnReader {
+        final int column;
+        final Class<?> type;
+
+        ColumnReader(int column, Class<?> type) {
+            this.column = column;
+            this.type = type;
+        }
+
+        Object read(ResultSet rs) throws SQLException {
+            if (column < 0) {
+                return defaultValue();
+            }
+
+            if (type == long.class) return rs.getLong(column);
+            if (type == int.class) return rs.getInt(column);
+            if (type == double.class) return rs.getDouble(column);
+            if (type == boolean.class) return rs.getBoolean(column);
+            if (type == float.class) return rs.getFloat(column);
+            if (type == short.class) return rs.getShort(column);
+            if (type == byte.class) return rs.getByte(column);
+            if (type == String.class) return rs.getString(column);
+
+            Object value = rs.getObject(column);
+            if (value == null || type.isInstance(value)) {
+                return value;
+            }
+            return convert(value);
+        }
+
+        // Primitive setters are invoked exactly so the column value is never boxed
+        void apply(ResultSet rs, MethodHandle setter, Object target) throws Throwable {
+            if (type == long.class) {
+                setter.invokeExact(target, rs.getLong(column));
+            } else if (type == int.class) {
+                setter.invokeExact(target, rs.getInt(column));
+            } else if (type == double.class) {
+                setter.invokeExact(target, rs.getDouble(column));
+            } else if (type == boolean.class) {
+                setter.invokeExact(target, rs.getBoolean(column));
+            } else {
+                setter.invoke(target, read(rs));
+            }
+        }
+
+        private Object convert(Object value) {
+            if (type == UUID.class) {
+                return UUID.fromString(value.toString());
+            }
+            if (type == Long.class && value instanceof Number number) {
+                return number.longValue();
+            }
+            if (type == Integer.class && value instanceof Number number) {
+                return number.intValue();
+            }
+            if (type == Double.class && value instanceof Number number) {
+                return number.doubleValue();
+            }
+            if (type == Boolean.class && value instanceof Number number) {
+                return number.longValue() != 0;
+            }
+            if (type.isEnum()) {
+                return enumValue(value.toString());
+            }
+            return value;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object enumValue(String name) {
+            return Enum.valueOf((Class<? extends Enum>) type, name);
+        }
+
+        private Object defaultValue() {
+            if (type == long.class) return 0L;
+            if (type == int.class) return 0;
+            if (type == double.class) return 0.0;
+            if (type == boolean.class) return false;
+            if (type == float.class) return 0.0f;
+            if (type == short.class) return (short) 0;
+            if (type == byte.class) return (byte) 0;
+            return null;
+        }
+    }
+
+    private static class MapperKey {
+        final Class<?> type;
+        final String sql;
+
+        MapperKey(Class<?> type, String sql) {
+            this.type = type;
+            this.sql = sql;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof MapperKey other)) return false;
+            return type == other.type && sql.equals(other.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, sql);
+        }
+    }
+}
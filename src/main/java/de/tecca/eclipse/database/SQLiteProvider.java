@@ -1,13 +1,17 @@
 package de.tecca.eclipse.database;
 
+import de.tecca.eclipse.api.database.QueryPriority;
+import de.tecca.eclipse.api.database.RowSet;
+import de.tecca.eclipse.api.database.Session;
 import de.tecca.eclipse.api.database.Transaction;
 import org.bukkit.plugin.Plugin;
 import java.sql.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.ArrayList;
 import java.io.File;
 
 public class SQLiteProvider implements DatabaseProvider {
@@ -15,11 +19,19 @@ public class SQLiteProvider implements DatabaseProvider {
     private final Plugin plugin;
     private final String filename;
     private final String filePath;
+    private final int readerConnections;
+    private final StatementCache statementCache = new StatementCache();
     private ConnectionManager connectionManager;
+    private volatile GroupCommitWriter groupCommitWriter;
 
     public SQLiteProvider(Plugin plugin, String filename) {
+        this(plugin, filename, 0);
+    }
+
+    public SQLiteProvider(Plugin plugin, String filename, int readerConnections) {
         this.plugin = plugin;
         this.filename = filename;
+        this.readerConnections = readerConnections;
         this.filePath = new File(plugin.getDataFolder(), filename).getAbsolutePath();
 
         // Create database file if it doesn't exist
@@ -44,15 +56,54 @@ public class SQLiteProvider implements DatabaseProvider {
 
     @Override
     public CompletableFuture<List<Map<String, Object>>> query(String sql, Object... params) {
-        return CompletableFuture.supplyAsync(() -> {
-            try (Connection conn = connectionManager.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+        boolean primary = ConnectionManager.isPinnedToPrimary();
+        return connectionManager.supply(QueryPriority.INTERACTIVE, guard -> {
+            try (Connection conn = connectionManager.getReadConnection(primary)) {
+                return statementCache.execute(conn, sql, guard, stmt -> {
+                    setParameters(stmt, params);
 
-                setParameters(stmt, params);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        return ResultSets.toMaps(rs);
+                    }
+                });
 
-                try (ResultSet rs = stmt.executeQuery()) {
-                    return mapResultSet(rs);
-                }
+            } catch (SQLException e) {
+                throw new RuntimeException("SQLite query failed: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<RowSet> queryRowSet(String sql, Object... params) {
+        boolean primary = ConnectionManager.isPinnedToPrimary();
+        return connectionManager.supply(QueryPriority.INTERACTIVE, guard -> {
+            try (Connection conn = connectionManager.getReadConnection(primary)) {
+                return statementCache.execute(conn, sql, guard, stmt -> {
+                    setParameters(stmt, params);
+
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        return RowSet.fromResultSet(rs);
+                    }
+                });
+
+            } catch (SQLException e) {
+                throw new RuntimeException("SQLite query failed: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @Override
+    public <T> CompletableFuture<List<T>> queryAs(Class<T> type, String sql, Object... params) {
+        boolean primary = ConnectionManager.isPinnedToPrimary();
+        return connectionManager.supply(QueryPriority.INTERACTIVE, guard -> {
+            try (Connection conn = connectionManager.getReadConnection(primary)) {
+                return statementCache.execute(conn, sql, guard, stmt -> {
+                    setParameters(stmt, params);
+
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        return RowMapper.of(type, sql, rs.getMetaData()).mapAll(rs);
+                    }
+                });
 
             } catch (SQLException e) {
                 throw new RuntimeException("SQLite query failed: " + e.getMessage(), e);
@@ -62,12 +113,17 @@ public class SQLiteProvider implements DatabaseProvider {
 
     @Override
     public CompletableFuture<Integer> update(String sql, Object... params) {
-        return CompletableFuture.supplyAsync(() -> {
-            try (Connection conn = connectionManager.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+        GroupCommitWriter writer = groupCommitWriter;
+        if (writer != null) {
+            return writer.submit(sql, params);
+        }
 
-                setParameters(stmt, params);
-                return stmt.executeUpdate();
+        return connectionManager.supply(guard -> {
+            try (Connection conn = connectionManager.getConnection()) {
+                return statementCache.execute(conn, sql, guard, stmt -> {
+                    setParameters(stmt, params);
+                    return stmt.executeUpdate();
+                });
 
             } catch (SQLException e) {
                 throw new RuntimeException("SQLite update failed: " + e.getMessage(), e);
@@ -77,12 +133,17 @@ public class SQLiteProvider implements DatabaseProvider {
 
     @Override
     public CompletableFuture<Void> execute(String sql, Object... params) {
-        return CompletableFuture.runAsync(() -> {
-            try (Connection conn = connectionManager.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+        GroupCommitWriter writer = groupCommitWriter;
+        if (writer != null) {
+            return writer.submit(sql, params).thenApply(count -> null);
+        }
 
-                setParameters(stmt, params);
-                stmt.execute();
+        return connectionManager.run(guard -> {
+            try (Connection conn = connectionManager.getConnection()) {
+                statementCache.execute(conn, sql, guard, stmt -> {
+                    setParameters(stmt, params);
+                    return stmt.execute();
+                });
 
             } catch (SQLException e) {
                 throw new RuntimeException("SQLite execute failed: " + e.getMessage(), e);
@@ -90,24 +151,141 @@ public class SQLiteProvider implements DatabaseProvider {
         });
     }
 
+    @Override
+    public CompletableFuture<int[]> batch(String sql, List<Object[]> parameterSets, int chunkSize) {
+        return connectionManager.supply(guard -> {
+            int[] results = new int[parameterSets.size()];
+
+            for (int start = 0; start < parameterSets.size(); start += chunkSize) {
+                int end = Math.min(start + chunkSize, parameterSets.size());
+
+                try (Connection conn = connectionManager.getConnection()) {
+                    conn.setAutoCommit(false);
+
+                    try {
+                        int first = start;
+                        int[] counts = statementCache.execute(conn, sql, guard, stmt -> {
+                            for (int i = first; i < end; i++) {
+                                setParameters(stmt, parameterSets.get(i));
+                                stmt.addBatch();
+                            }
+                            return stmt.executeBatch();
+                        });
+                        conn.commit();
+                        System.arraycopy(counts, 0, results, start, counts.length);
+
+                    } catch (SQLException e) {
+                        conn.rollback();
+                        throw e;
+                    } finally {
+                        conn.setAutoCommit(true);
+                    }
+
+                } catch (SQLException e) {
+                    throw new RuntimeException("SQLite batch failed: " + e.getMessage(), e);
+                }
+            }
+
+            return results;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> stream(String sql, Object[] params, int fetchSize, Consumer<Map<String, Object>> rowConsumer) {
+        boolean primary = ConnectionManager.isPinnedToPrimary();
+        return connectionManager.supply(guard -> {
+            try (Connection conn = connectionManager.getReadConnection(primary)) {
+                return statementCache.execute(conn, sql, guard, stmt -> {
+                    stmt.setFetchSize(fetchSize);
+                    setParameters(stmt, params);
+
+                    long count = 0;
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        ResultSetMetaData metaData = rs.getMetaData();
+                        int columnCount = metaData.getColumnCount();
+                        String[] columnNames = new String[columnCount];
+                        for (int i = 0; i < columnCount; i++) {
+                            columnNames[i] = metaData.getColumnLabel(i + 1);
+                        }
+
+                        // Stops early when the caller cancels the returned future or the deadline passes
+                        while (!guard.isAborted() && rs.next()) {
+                            Map<String, Object> row = new HashMap<>(columnCount * 2);
+                            for (int i = 0; i < columnCount; i++) {
+                                row.put(columnNames[i], rs.getObject(i + 1));
+                            }
+                            rowConsumer.accept(row);
+                            count++;
+                        }
+                    }
+                    return count;
+                });
+
+            } catch (SQLException e) {
+                throw new RuntimeException("SQLite stream failed: " + e.getMessage(), e);
+            }
+        });
+    }
+
     @Override
     public Transaction beginTransaction() {
         try {
             Connection conn = connectionManager.getConnection();
             conn.setAutoCommit(false);
-            return new TransactionImpl(conn);
+            return new TransactionImpl(conn, connectionManager, statementCache);
         } catch (SQLException e) {
             throw new RuntimeException("Failed to begin SQLite transaction: " + e.getMessage(), e);
         }
     }
 
+    // The whole session holds one write connection and runs under a single deadline
+    @Override
+    public <T> CompletableFuture<T> withSession(Function<Session, T> work) {
+        return connectionManager.supply(guard -> {
+            try (Connection conn = connectionManager.getConnection()) {
+                SessionImpl session = new SessionImpl(conn, statementCache, guard);
+                try {
+                    return work.apply(session);
+                } finally {
+                    session.close();
+                }
+
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to open sqlite session: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @Override
+    public SqlDialect getDialect() {
+        return SqlDialect.SQLITE;
+    }
+
     @Override
     public boolean isConnected() {
         return connectionManager != null && connectionManager.isConnected();
     }
 
+    public void enableGroupCommit(long flushWindowMillis, int maxGroupSize) {
+        GroupCommitWriter previous = groupCommitWriter;
+        groupCommitWriter = new GroupCommitWriter(connectionManager, statementCache, flushWindowMillis, maxGroupSize);
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    public GroupCommitWriter getGroupCommitWriter() {
+        return groupCommitWriter;
+    }
+
     @Override
     public void shutdown() {
+        // Pending grouped writes are committed before the pool closes
+        GroupCommitWriter writer = groupCommitWriter;
+        if (writer != null) {
+            writer.shutdown();
+        }
+        statementCache.clear();
         if (connectionManager != null) {
             connectionManager.shutdown();
         }
@@ -119,25 +297,12 @@ public class SQLiteProvider implements DatabaseProvider {
         }
     }
 
-    private List<Map<String, Object>> mapResultSet(ResultSet rs) throws SQLException {
-        List<Map<String, Object>> results = new ArrayList<>();
-        ResultSetMetaData metaData = rs.getMetaData();
-        int columnCount = metaData.getColumnCount();
-
-        while (rs.next()) {
-            Map<String, Object> row = new HashMap<>();
-            for (int i = 1; i <= columnCount; i++) {
-                String columnName = metaData.getColumnLabel(i);
-                Object value = rs.getObject(i);
-                row.put(columnName, value);
-            }
-            results.add(row);
-        }
-
-        return results;
+    public StatementCache getStatementCache() {
+        return statementCache;
     }
 
     // Getters
     public String getFilename() { return filename; }
     public String getFilePath() { return filePath; }
+    public int getReaderConnections() { return readerConnections; }
 }
\ No newline at end of file
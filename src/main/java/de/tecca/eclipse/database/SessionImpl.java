@@ -0,0 +1,154 @@
+package de.tecca.eclipse.database;
+
+import de.tecca.eclipse.api.database.Session;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Runs statements one after another on a single borrowed connection, on the thread that holds it.
+// Statements come from the provider's statement cache when it has one; otherwise each distinct
+// SQL is prepared once per session and closed with it.
+public class SessionImpl implements Session {
+
+    private final Connection connection;
+    private final StatementCache statementCache;
+    private final StatementGuard guard;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+    private boolean open = true;
+
+    public SessionImpl(Connection connection, StatementCache statementCache, StatementGuard guard) {
+        this.connection = connection;
+        this.statementCache = statementCache;
+        this.guard = guard;
+    }
+
+    @Override
+    public List<Map<String, Object>> query(String sql, Object... params) {
+        try {
+            return withStatement(sql, stmt -> {
+                setParameters(stmt, params);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return ResultSets.toMaps(rs);
+                }
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Session query failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public <T> List<T> query(Class<T> type, String sql, Object... params) {
+        try {
+            return withStatement(sql, stmt -> {
+                setParameters(stmt, params);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return RowMapper.of(type, sql, rs.getMetaData()).mapAll(rs);
+                }
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Session query failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int update(String sql, Object... params) {
+        try {
+            return withStatement(sql, stmt -> {
+                setParameters(stmt, params);
+                return stmt.executeUpdate();
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Session update failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void execute(String sql, Object... params) {
+        try {
+            withStatement(sql, stmt -> {
+                setParameters(stmt, params);
+                return stmt.execute();
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Session execute failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int[] batch(String sql, List<Object[]> parameterSets) {
+        try {
+            return withStatement(sql, stmt -> {
+                for (Object[] params : parameterSets) {
+                    setParameters(stmt, params);
+                    stmt.addBatch();
+                }
+                return stmt.executeBatch();
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Session batch failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    // Called by the provider before the connection goes back to the pool
+    void close() {
+        open = false;
+        for (PreparedStatement stmt : statements.values()) {
+            closeQuietly(stmt);
+        }
+        statements.clear();
+    }
+
+    private <T> T withStatement(String sql, StatementCache.StatementCallback<T> callback) throws SQLException {
+        if (!open) {
+            throw new IllegalStateException("Session is closed");
+        }
+
+        if (statementCache != null) {
+            return statementCache.execute(connection, sql, guard, callback);
+        }
+
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt == null) {
+            stmt = connection.prepareStatement(sql);
+            statements.put(sql, stmt);
+        }
+
+        try {
+            T result = callback.apply(guard.track(stmt));
+            stmt.clearParameters();
+            stmt.clearBatch();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            statements.remove(sql);
+            closeQuietly(stmt);
+            throw e;
+        } finally {
+            guard.release();
+        }
+    }
+
+    private void setParameters(PreparedStatement stmt, Object[] params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            stmt.setObject(i + 1, params[i]);
+        }
+    }
+
+    private void closeQuietly(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            // Statement is discarded either way
+        }
+    }
+}
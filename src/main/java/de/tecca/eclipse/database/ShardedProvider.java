@@ -0,0 +1,351 @@
+package de.tecca.eclipse.database;
+
+import de.tecca.eclipse.api.database.RowSet;
+import de.tecca.eclipse.api.database.Session;
+import de.tecca.eclipse.api.database.Transaction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Spreads sharded tables over several providers by a consistent hash of their shard key column.
+// Tables without a declared shard key live on the first shard. Raw SQL is routed by its verb and
+// table: reads of sharded tables are gathered, DDL is broadcast, updates and deletes of sharded
+// tables run everywhere, and everything touching an unsharded table runs on the first shard only.
+public class ShardedProvider implements DatabaseProvider {
+
+    private static final int VIRTUAL_NODES = 128;
+    private static final Pattern VERB = Pattern.compile("^\\s*(\\w+)");
+    private static final Pattern TABLE = Pattern.compile("\\b(?:FROM|JOIN|INTO|UPDATE)\\s+[`\"\\[]?(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    private final List<DatabaseProvider> shards;
+    private final TreeMap<Long, Integer> ring = new TreeMap<>();
+    private final Map<String, String> shardKeys = new ConcurrentHashMap<>();
+
+    public ShardedProvider(List<DatabaseProvider> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+
+        this.shards = List.copyOf(shards);
+
+        // Virtual nodes keep the key spread even; adding a shard only moves keys onto the new one
+        for (int shard = 0; shard < shards.size(); shard++) {
+            for (int node = 0; node < VIRTUAL_NODES; node++) {
+                ring.put(hash("shard-" + shard + "-" + node), shard);
+            }
+        }
+    }
+
+    public void setShardKey(String table, String column) {
+        shardKeys.put(table, column);
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public DatabaseProvider getShard(int index) {
+        return shards.get(index);
+    }
+
+    public DatabaseProvider shardFor(Object key) {
+        Map.Entry<Long, Integer> entry = ring.ceilingEntry(hash(KeyValues.normalize(key).toString()));
+        return shards.get((entry != null ? entry : ring.firstEntry()).getValue());
+    }
+
+    // Owning shard of a table row given one column value, or null when the column is not the shard key
+    public DatabaseProvider routeKey(String table, String column, Object value) {
+        String shardKey = shardKeys.get(table);
+        if (shardKey == null) {
+            return shards.get(0);
+        }
+        if (!shardKey.equals(column) || value == null) {
+            return null;
+        }
+        return shardFor(value);
+    }
+
+    // Inserts are routed by the written shard key value, everything else by an equality where() on
+    // it. Returns null when the statement has to run on every shard.
+    DatabaseProvider route(String table, Map<String, Object> values, List<Condition> conditions,
+                           List<Object> parameters, boolean insert) {
+        String shardKey = shardKeys.get(table);
+        if (shardKey == null) {
+            return shards.get(0);
+        }
+
+        if (insert) {
+            Object value = values.get(shardKey);
+            if (value == null) {
+                throw new IllegalArgumentException("Writes to sharded table " + table + " need a value for " + shardKey);
+            }
+            return shardFor(value);
+        }
+
+        Object value = null;
+        int index = 0;
+        for (Condition condition : conditions) {
+            if (value == null && condition.column.equals(shardKey) && condition.operator.equals("=") && condition.arity == 1) {
+                value = parameters.get(index);
+            }
+            index += condition.arity;
+        }
+
+        // The row would have to move to another shard, which an UPDATE cannot do
+        if (values.containsKey(shardKey) && (value == null
+                || !KeyValues.normalize(value).equals(KeyValues.normalize(values.get(shardKey))))) {
+            throw new IllegalArgumentException("Shard key " + shardKey + " of sharded table " + table
+                    + " cannot be changed in place, delete and re-insert the row");
+        }
+
+        return value != null ? shardFor(value) : null;
+    }
+
+    // Each shard returns its first offset + limit rows in order; the merged list is sorted and sliced
+    CompletableFuture<List<Map<String, Object>>> gather(String sql, Object[] params,
+                                                        Comparator<Map<String, Object>> order,
+                                                        Integer limit, Integer offset) {
+        return query(sql, params).thenApply(rows -> {
+            List<Map<String, Object>> merged = new ArrayList<>(rows);
+            if (order != null) {
+                merged.sort(order);
+            }
+
+            int from = offset != null ? Math.min(offset, merged.size()) : 0;
+            int to = limit != null ? Math.min(from + limit, merged.size()) : merged.size();
+            return merged.subList(from, to);
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> query(String sql, Object... params) {
+        DatabaseProvider target = readTarget(sql);
+        if (target != null) {
+            return target.query(sql, params);
+        }
+        return scatter(shard -> shard.query(sql, params)).thenApply(ShardedProvider::concat);
+    }
+
+    @Override
+    public CompletableFuture<RowSet> queryRowSet(String sql, Object... params) {
+        if (shards.size() == 1) {
+            return shards.get(0).queryRowSet(sql, params);
+        }
+        return CompletableFuture.failedFuture(
+                new UnsupportedOperationException("Row sets cannot be gathered across shards, query with a shard key"));
+    }
+
+    @Override
+    public <T> CompletableFuture<List<T>> queryAs(Class<T> type, String sql, Object... params) {
+        DatabaseProvider target = readTarget(sql);
+        if (target != null) {
+            return target.queryAs(type, sql, params);
+        }
+        return scatter(shard -> shard.queryAs(type, sql, params)).thenApply(ShardedProvider::concat);
+    }
+
+    @Override
+    public CompletableFuture<Integer> update(String sql, Object... params) {
+        DatabaseProvider target;
+        try {
+            target = writeTarget(sql);
+        } catch (UnsupportedOperationException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (target != null) {
+            return target.update(sql, params);
+        }
+        return scatter(shard -> shard.update(sql, params))
+                .thenApply(counts -> counts.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Override
+    public CompletableFuture<Void> execute(String sql, Object... params) {
+        DatabaseProvider target;
+        try {
+            target = writeTarget(sql);
+        } catch (UnsupportedOperationException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (target != null) {
+            return target.execute(sql, params);
+        }
+        return scatter(shard -> shard.execute(sql, params)).thenApply(results -> null);
+    }
+
+    // Shards are streamed one after another so the consumer is never called concurrently. Later
+    // shards start from a pool thread, so they are submitted under the caller's captured scope.
+    @Override
+    public CompletableFuture<Long> stream(String sql, Object[] params, int fetchSize, Consumer<Map<String, Object>> rowConsumer) {
+        DatabaseProvider target = readTarget(sql);
+        if (target != null) {
+            return target.stream(sql, params, fetchSize, rowConsumer);
+        }
+
+        ConnectionManager.Scope scope = ConnectionManager.captureScope();
+        CompletableFuture<Long> total = CompletableFuture.completedFuture(0L);
+        for (DatabaseProvider shard : shards) {
+            total = total.thenCompose(rows -> scope.apply(() -> shard.stream(sql, params, fetchSize, rowConsumer))
+                    .thenApply(more -> rows + more));
+        }
+        return total;
+    }
+
+    @Override
+    public CompletableFuture<int[]> batch(String sql, List<Object[]> parameterSets, int chunkSize) {
+        DatabaseProvider target;
+        try {
+            target = writeTarget(sql);
+        } catch (UnsupportedOperationException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (target != null) {
+            return target.batch(sql, parameterSets, chunkSize);
+        }
+        return scatter(shard -> shard.batch(sql, parameterSets, chunkSize)).thenApply(results -> {
+            int[] counts = new int[parameterSets.size()];
+            for (int[] shardCounts : results) {
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += Math.max(shardCounts[i], 0);
+                }
+            }
+            return counts;
+        });
+    }
+
+    @Override
+    public Transaction beginTransaction() {
+        if (shards.size() == 1) {
+            return shards.get(0).beginTransaction();
+        }
+        throw new UnsupportedOperationException("Transactions cannot span shards, begin one on shardFor(key)");
+    }
+
+    @Override
+    public <T> CompletableFuture<T> withSession(Function<Session, T> work) {
+        if (shards.size() == 1) {
+            return shards.get(0).withSession(work);
+        }
+        return CompletableFuture.failedFuture(
+                new UnsupportedOperationException("Sessions cannot span shards, open one on shardFor(key)"));
+    }
+
+    @Override
+    public SqlDialect getDialect() {
+        return shards.get(0).getDialect();
+    }
+
+    @Override
+    public boolean isConnected() {
+        for (DatabaseProvider shard : shards) {
+            if (!shard.isConnected()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void shutdown() {
+        for (DatabaseProvider shard : shards) {
+            shard.shutdown();
+        }
+    }
+
+    // Reads that only touch tables without a shard key are answered by the first shard alone
+    private DatabaseProvider readTarget(String sql) {
+        return touchesShardedTable(sql) ? null : shards.get(0);
+    }
+
+    // Returns null for statements that have to run on every shard. A raw insert into a sharded
+    // table carries no routable key, and broadcasting it would store the row once per shard.
+    private DatabaseProvider writeTarget(String sql) {
+        Matcher verb = VERB.matcher(sql);
+        Matcher table = TABLE.matcher(sql);
+        boolean sharded = touchesShardedTable(sql);
+
+        switch (verb.find() ? verb.group(1).toUpperCase() : "") {
+            case "CREATE", "ALTER", "DROP", "TRUNCATE", "PRAGMA", "SET":
+                return null;
+            case "INSERT", "REPLACE", "UPSERT", "MERGE":
+                if (sharded) {
+                    throw new UnsupportedOperationException("Raw inserts into sharded table "
+                            + (table.find() ? table.group(1) : "") + " cannot be routed, use table(...).insert() or shardFor(key)");
+                }
+                return shards.get(0);
+            case "UPDATE", "DELETE":
+                return sharded ? null : shards.get(0);
+            default:
+                return shards.get(0);
+        }
+    }
+
+    // Statements whose tables cannot be found are treated as sharded
+    private boolean touchesShardedTable(String sql) {
+        Matcher matcher = TABLE.matcher(sql);
+        boolean found = false;
+        while (matcher.find()) {
+            found = true;
+            if (shardKeys.containsKey(matcher.group(1))) {
+                return true;
+            }
+        }
+        return !found;
+    }
+
+    private <R> CompletableFuture<List<R>> scatter(Function<DatabaseProvider, CompletableFuture<R>> call) {
+        List<CompletableFuture<R>> futures = new ArrayList<>(shards.size());
+        for (DatabaseProvider shard : shards) {
+            futures.add(call.apply(shard));
+        }
+
+        CompletableFuture<List<R>> gathered = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<R> results = new ArrayList<>(futures.size());
+            for (CompletableFuture<R> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        });
+
+        // Cancelling the gathered future cancels the statements still running on the shards
+        gathered.whenComplete((results, error) -> {
+            if (gathered.isCancelled()) {
+                futures.forEach(future -> future.cancel(true));
+            }
+        });
+        return gathered;
+    }
+
+    private static <T> List<T> concat(List<List<T>> parts) {
+        List<T> result = new ArrayList<>();
+        for (List<T> part : parts) {
+            result.addAll(part);
+        }
+        return result;
+    }
+
+    // FNV-1a followed by the murmur3 finalizer, so short similar keys still spread over the ring
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,55 @@
+package de.tecca.eclipse.database;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public class SingleFlight {
+
+    private final Map<QueryKey, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    // Every caller gets its own dependent future, so cancelling one does not cancel the shared query
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> execute(QueryKey key, Supplier<CompletableFuture<T>> loader) {
+        CompletableFuture<T> promise = new CompletableFuture<>();
+        CompletableFuture<T> existing = (CompletableFuture<T>) inFlight.putIfAbsent(key, promise);
+
+        if (existing != null) {
+            coalesced.increment();
+            return existing.thenApply(result -> result);
+        }
+
+        executions.increment();
+        try {
+            loader.get().whenComplete((result, error) -> {
+                inFlight.remove(key, promise);
+                if (error != null) {
+                    promise.completeExceptionally(error);
+                } else {
+                    promise.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, promise);
+            promise.completeExceptionally(e);
+        }
+
+        return promise.thenApply(result -> result);
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+}
@@ -0,0 +1,71 @@
+package de.tecca.eclipse.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public enum SqlDialect {
+
+    MYSQL(65535) {
+        @Override
+        void appendUpsert(StringBuilder sql, List<String> columns, List<String> keyColumns, List<String> incrementColumns) {
+            List<String> updates = updateColumns(columns, keyColumns);
+            sql.append(" ON DUPLICATE KEY UPDATE ");
+            for (int i = 0; i < updates.size(); i++) {
+                String column = updates.get(i);
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append(column).append(" = ");
+                if (incrementColumns.contains(column)) {
+                    sql.append(column).append(" + ");
+                }
+                sql.append("VALUES(").append(column).append(")");
+            }
+        }
+    },
+
+    // Without key columns the conflict target is left out, which SQLite 3.35+ applies to any unique index
+    SQLITE(32766) {
+        @Override
+        void appendUpsert(StringBuilder sql, List<String> columns, List<String> keyColumns, List<String> incrementColumns) {
+            sql.append(" ON CONFLICT");
+            if (!keyColumns.isEmpty()) {
+                sql.append(" (").append(String.join(", ", keyColumns)).append(")");
+            }
+
+            List<String> updates = updateColumns(columns, keyColumns);
+            sql.append(" DO UPDATE SET ");
+            for (int i = 0; i < updates.size(); i++) {
+                String column = updates.get(i);
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append(column).append(" = ");
+                if (incrementColumns.contains(column)) {
+                    sql.append(column).append(" + ");
+                }
+                sql.append("excluded.").append(column);
+            }
+        }
+    };
+
+    private final int maxParameters;
+
+    SqlDialect(int maxParameters) {
+        this.maxParameters = maxParameters;
+    }
+
+    public int getMaxParameters() {
+        return maxParameters;
+    }
+
+    // Increment columns add the inserted value to the existing one instead of replacing it
+    abstract void appendUpsert(StringBuilder sql, List<String> columns, List<String> keyColumns, List<String> incrementColumns);
+
+    // Key columns identify the row and need no update; a key-only row just rewrites its first key
+    private static List<String> updateColumns(List<String> columns, List<String> keyColumns) {
+        List<String> updates = new ArrayList<>(columns);
+        updates.removeAll(keyColumns);
+        return updates.isEmpty() ? List.of(columns.get(0)) : updates;
+    }
+}
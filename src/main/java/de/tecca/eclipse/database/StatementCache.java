@@ -0,0 +1,144 @@
+package de.tecca.eclipse.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class StatementCache {
+
+    public static final int DEFAULT_STATEMENTS_PER_CONNECTION = 250;
+
+    private final int maxStatements;
+    // Cached statements reference their connection, so entries are dropped explicitly once it closes
+    private final Map<Connection, Map<String, PreparedStatement>> caches = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public StatementCache() {
+        this(DEFAULT_STATEMENTS_PER_CONNECTION);
+    }
+
+    public StatementCache(int maxStatements) {
+        this.maxStatements = maxStatements;
+    }
+
+    // The guard's deadline applies to the cached statement, which is detached again before reuse
+    public <T> T execute(Connection connection, String sql, StatementGuard guard, StatementCallback<T> callback) throws SQLException {
+        return execute(connection, sql, stmt -> {
+            try {
+                return callback.apply(guard.track(stmt));
+            } finally {
+                guard.release();
+            }
+        });
+    }
+
+    // Statements are prepared on the physical connection so they outlive the pool's proxy
+    public <T> T execute(Connection connection, String sql, StatementCallback<T> callback) throws SQLException {
+        Connection physical = connection.unwrap(Connection.class);
+        Map<String, PreparedStatement> statements = caches.get(physical);
+        if (statements == null) {
+            // A new physical connection usually replaces one the pool has retired
+            evictClosed();
+            statements = caches.computeIfAbsent(physical, c -> createLru());
+        }
+
+        PreparedStatement stmt = statements.remove(sql);
+        if (stmt != null && !stmt.isClosed()) {
+            hits.increment();
+        } else {
+            misses.increment();
+            stmt = physical.prepareStatement(sql);
+        }
+
+        try {
+            T result = callback.apply(stmt);
+            stmt.clearParameters();
+            stmt.clearBatch();
+            statements.put(sql, stmt);
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            closeQuietly(stmt);
+            throw e;
+        }
+    }
+
+    public void clear() {
+        for (Iterator<Map<String, PreparedStatement>> it = caches.values().iterator(); it.hasNext(); ) {
+            Map<String, PreparedStatement> statements = it.next();
+            it.remove();
+            statements.values().forEach(this::closeQuietly);
+        }
+    }
+
+    // Closed connections are never handed out again, so nobody else can be using their statements
+    private void evictClosed() {
+        for (Iterator<Map.Entry<Connection, Map<String, PreparedStatement>>> it = caches.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Connection, Map<String, PreparedStatement>> entry = it.next();
+            if (isClosed(entry.getKey())) {
+                it.remove();
+                entry.getValue().values().forEach(this::closeQuietly);
+            }
+        }
+    }
+
+    private static boolean isClosed(Connection connection) {
+        try {
+            return connection.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long total = hits.sum() + misses.sum();
+        return total == 0 ? 0.0 : (double) hits.sum() / total;
+    }
+
+    // A physical connection is only ever used by the thread that borrowed it, so the LRU needs no locking
+    private Map<String, PreparedStatement> createLru() {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > maxStatements) {
+                    closeQuietly(eldest.getValue());
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    private void closeQuietly(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            // Statement is discarded either way
+        }
+    }
+
+    @FunctionalInterface
+    public interface StatementCallback<T> {
+        T apply(PreparedStatement stmt) throws SQLException;
+    }
+}
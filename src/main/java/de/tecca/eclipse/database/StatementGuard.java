@@ -0,0 +1,62 @@
+package de.tecca.eclipse.database;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.SQLTimeoutException;
+
+// Tracks the statement a query task is running so its deadline or the caller's cancel() can
+// abort it. Statement.cancel() makes the driver fail the running call; the task then unwinds and
+// its try-with-resources hands the connection back to the pool.
+public class StatementGuard {
+
+    private final long deadlineNanos;
+    private final boolean driverTimeout;
+    private Statement statement;
+    private boolean aborted;
+
+    // sqlite-jdbc maps the query timeout onto the connection's busy timeout, so SQLite statements
+    // rely on cancel() alone and only MySQL gets the driver-side timeout as a backstop
+    StatementGuard(long timeoutMillis, boolean driverTimeout) {
+        this.deadlineNanos = timeoutMillis > 0 ? System.nanoTime() + timeoutMillis * 1_000_000 : 0;
+        this.driverTimeout = driverTimeout;
+    }
+
+    public synchronized <S extends Statement> S track(S stmt) throws SQLException {
+        if (aborted) {
+            throw new SQLException("Query was cancelled");
+        }
+
+        if (deadlineNanos != 0) {
+            long remaining = deadlineNanos - System.nanoTime();
+            if (remaining <= 0) {
+                throw new SQLTimeoutException("Query deadline passed before it started");
+            }
+            if (driverTimeout) {
+                stmt.setQueryTimeout((int) Math.max(1, (remaining + 999_999_999) / 1_000_000_000));
+            }
+        }
+
+        statement = stmt;
+        return stmt;
+    }
+
+    // Detaches the statement before it is reused, so a late abort cannot hit someone else's query
+    public synchronized void release() {
+        statement = null;
+    }
+
+    public synchronized boolean isAborted() {
+        return aborted;
+    }
+
+    synchronized void abort() {
+        aborted = true;
+        if (statement != null) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                // The statement already finished or was closed
+            }
+        }
+    }
+}
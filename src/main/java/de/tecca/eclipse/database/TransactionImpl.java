@@ -1,21 +1,37 @@
 package de.tecca.eclipse.database;
 
 import de.tecca.eclipse.api.database.Transaction;
+import de.tecca.eclipse.api.database.TransactionResult;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
 import java.util.ArrayList;
 
 public class TransactionImpl implements Transaction {
 
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long BASE_BACKOFF_MILLIS = 20;
+    private static final int MYSQL_DEADLOCK = 1213;
+    private static final int SQLITE_BUSY = 5;
+
     private final Connection connection;
+    private final ConnectionManager connectionManager;
+    private final StatementCache statementCache;
     private final List<TransactionOperation> operations = new ArrayList<>();
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
     private boolean active = true;
 
-    public TransactionImpl(Connection connection) {
+    public TransactionImpl(Connection connection, ConnectionManager connectionManager, StatementCache statementCache) {
         this.connection = connection;
+        this.connectionManager = connectionManager;
+        this.statementCache = statementCache;
     }
 
     @Override
@@ -48,33 +64,39 @@ public class TransactionImpl implements Transaction {
         return this;
     }
 
+    // Deadlocks and serialization failures roll back and replay every step after a jittered,
+    // doubling backoff; then() callbacks run again on each attempt.
     @Override
-    public CompletableFuture<Void> commit() {
-        return CompletableFuture.runAsync(() -> {
+    public CompletableFuture<TransactionResult> commit() {
+        return releaseIfRejected(executor().supply(() -> {
             if (!active) {
                 throw new IllegalStateException("Transaction is not active");
             }
 
             try {
-                executeOperations();
-                connection.commit();
-                active = false;
-            } catch (SQLException e) {
-                try {
-                    connection.rollback();
-                } catch (SQLException rollbackEx) {
-                    // Log rollback failure
+                for (int attempt = 1; ; attempt++) {
+                    try {
+                        List<Object> results = executeOperations();
+                        connection.commit();
+                        active = false;
+                        return new TransactionResult(results, attempt);
+                    } catch (SQLException e) {
+                        rollbackQuietly();
+                        if (attempt >= MAX_ATTEMPTS || !isRetryable(e)) {
+                            throw new RuntimeException("Transaction commit failed: " + e.getMessage(), e);
+                        }
+                        backoff(attempt);
+                    }
                 }
-                throw new RuntimeException("Transaction commit failed: " + e.getMessage(), e);
             } finally {
                 close();
             }
-        });
+        }));
     }
 
     @Override
     public CompletableFuture<Void> rollback() {
-        return CompletableFuture.runAsync(() -> {
+        return releaseIfRejected(executor().run(() -> {
             if (!active) {
                 return;
             }
@@ -87,7 +109,22 @@ public class TransactionImpl implements Transaction {
                 active = false;
                 close();
             }
-        });
+        }));
+    }
+
+    // The executor is swapped when the thread mode changes, so it is looked up when the
+    // transaction finishes rather than when it was opened
+    private DatabaseExecutor executor() {
+        return connectionManager.getExecutor();
+    }
+
+    // A rejected commit or rollback never runs, so the connection is handed back here instead
+    private <T> CompletableFuture<T> releaseIfRejected(CompletableFuture<T> future) {
+        if (future.isCompletedExceptionally()) {
+            rollbackQuietly();
+            close();
+        }
+        return future;
     }
 
     @Override
@@ -97,6 +134,15 @@ public class TransactionImpl implements Transaction {
 
     @Override
     public void close() {
+        for (PreparedStatement stmt : statements.values()) {
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+                // Statement is discarded either way
+            }
+        }
+        statements.clear();
+
         if (connection != null) {
             try {
                 connection.setAutoCommit(true);
@@ -108,27 +154,121 @@ public class TransactionImpl implements Transaction {
         active = false;
     }
 
-    private void executeOperations() throws SQLException {
-        for (TransactionOperation operation : operations) {
+    // Each step's result lands at its index. Consecutive thenUpdate() steps with the same SQL run
+    // as one JDBC batch.
+    private List<Object> executeOperations() throws SQLException {
+        List<Object> results = new ArrayList<>(operations.size());
+
+        for (int i = 0; i < operations.size(); i++) {
+            TransactionOperation operation = operations.get(i);
             switch (operation.type) {
-                case "RUNNABLE" -> operation.runnable.run();
-                case "QUERY" -> executeQuery(operation.sql, operation.params);
-                case "UPDATE" -> executeUpdate(operation.sql, operation.params);
+                case "RUNNABLE" -> {
+                    operation.runnable.run();
+                    results.add(null);
+                }
+                case "QUERY" -> results.add(executeQuery(operation.sql, operation.params));
+                case "UPDATE" -> {
+                    int end = i + 1;
+                    while (end < operations.size() && operations.get(end).type.equals("UPDATE")
+                            && operations.get(end).sql.equals(operation.sql)) {
+                        end++;
+                    }
+
+                    if (end - i == 1) {
+                        results.add(executeUpdate(operation.sql, operation.params));
+                    } else {
+                        for (int count : executeBatch(operations.subList(i, end))) {
+                            results.add(count);
+                        }
+                        i = end - 1;
+                    }
+                }
             }
         }
+
+        return results;
     }
 
-    private void executeQuery(String sql, Object[] params) throws SQLException {
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+    private List<Map<String, Object>> executeQuery(String sql, Object[] params) throws SQLException {
+        return withStatement(sql, stmt -> {
             setParameters(stmt, params);
-            stmt.executeQuery();
-        }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return ResultSets.toMaps(rs);
+            }
+        });
     }
 
-    private void executeUpdate(String sql, Object[] params) throws SQLException {
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+    private int executeUpdate(String sql, Object[] params) throws SQLException {
+        return withStatement(sql, stmt -> {
             setParameters(stmt, params);
-            stmt.executeUpdate();
+            return stmt.executeUpdate();
+        });
+    }
+
+    private int[] executeBatch(List<TransactionOperation> batch) throws SQLException {
+        return withStatement(batch.get(0).sql, stmt -> {
+            for (TransactionOperation operation : batch) {
+                setParameters(stmt, operation.params);
+                stmt.addBatch();
+            }
+            return stmt.executeBatch();
+        });
+    }
+
+    // Without a shared statement cache, statements are kept for the life of the transaction so a
+    // repeated SQL string is prepared once
+    private <T> T withStatement(String sql, StatementCache.StatementCallback<T> callback) throws SQLException {
+        if (statementCache != null) {
+            return statementCache.execute(connection, sql, callback);
+        }
+
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt == null) {
+            stmt = connection.prepareStatement(sql);
+            statements.put(sql, stmt);
+        }
+
+        try {
+            T result = callback.apply(stmt);
+            stmt.clearParameters();
+            stmt.clearBatch();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            statements.remove(sql);
+            stmt.close();
+            throw e;
+        }
+    }
+
+    private static boolean isRetryable(SQLException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTransactionRollbackException) {
+                return true;
+            }
+            if (cause instanceof SQLException sql && ("40001".equals(sql.getSQLState())
+                    || sql.getErrorCode() == MYSQL_DEADLOCK || sql.getErrorCode() == SQLITE_BUSY)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void backoff(int attempt) {
+        long ceiling = BASE_BACKOFF_MILLIS << (attempt - 1);
+        try {
+            Thread.sleep(ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Transaction retry interrupted", e);
+        }
+    }
+
+    private void rollbackQuietly() {
+        try {
+            connection.rollback();
+        } catch (SQLException rollbackEx) {
+            // A broken connection fails the next attempt, or is discarded on close
         }
     }
 
@@ -0,0 +1,423 @@
+package de.tecca.eclipse.database;
+
+import de.tecca.eclipse.api.database.QueryPriority;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+public class WriteBehindBuffer {
+
+    private static final int MAX_FLUSH_ATTEMPTS = 5;
+
+    private final Supplier<DatabaseProvider> provider;
+    private final QueryCache queryCache;
+    private final Logger logger;
+    private final int maxBufferedRows;
+
+    private final Map<String, List<String>> keyColumns = new ConcurrentHashMap<>();
+    private final Map<RowKey, Map<String, Object>> buffer = new ConcurrentHashMap<>();
+    private final Map<RowKey, Snapshot> flushing = new ConcurrentHashMap<>();
+    private final Map<RowKey, Integer> failedAttempts = new ConcurrentHashMap<>();
+    private final AtomicInteger bufferedRows = new AtomicInteger();
+    private final AtomicLong snapshotVersions = new AtomicLong();
+    private final ScheduledExecutorService scheduler;
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private boolean closed;
+    private CompletableFuture<Void> lastFlush = CompletableFuture.completedFuture(null);
+    private boolean flushQueued;
+
+    private final LongAdder bufferedWrites = new LongAdder();
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder deadLetterRows = new LongAdder();
+
+    public WriteBehindBuffer(Supplier<DatabaseProvider> provider, QueryCache queryCache, Logger logger,
+                             long flushIntervalMillis, int maxBufferedRows) {
+        this.provider = provider;
+        this.queryCache = queryCache;
+        this.logger = logger;
+        this.maxBufferedRows = maxBufferedRows;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Eclipse-DB-WriteBehind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void register(String table, String... keys) {
+        keyColumns.put(table, List.of(keys));
+    }
+
+    public boolean handles(String table) {
+        return keyColumns.containsKey(table);
+    }
+
+    // Later writes to the same row overwrite earlier columns; only the merged row is flushed.
+    // Stored rows are immutable snapshots, so readers in overlay() never see one change under them.
+    // After shutdown() nothing is buffered and the caller writes through directly.
+    public boolean buffer(String table, Map<String, Object> values) {
+        RowKey key = keyOf(table, values);
+        if (key == null) {
+            return false;
+        }
+
+        boolean[] added = {false};
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            buffer.compute(key, (k, existing) -> {
+                if (existing == null) {
+                    added[0] = true;
+                }
+                return merge(existing, values);
+            });
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        bufferedWrites.increment();
+
+        if (added[0] && bufferedRows.incrementAndGet() >= maxBufferedRows) {
+            try {
+                scheduler.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // Shutting down; the final flush in shutdown() takes the row
+            }
+        }
+        return true;
+    }
+
+    // Overlays buffered values on rows read from the database. Point lookups on the full key
+    // also see rows that have only been buffered so far.
+    public List<Map<String, Object>> overlay(String table, List<Condition> conditions, List<Object> params,
+                                             List<Map<String, Object>> rows) {
+        List<String> keys = keyColumns.get(table);
+        if (keys == null || (buffer.isEmpty() && flushing.isEmpty())) {
+            return rows;
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>(rows.size());
+        List<RowKey> seen = new ArrayList<>();
+
+        for (Map<String, Object> row : rows) {
+            RowKey key = keyOf(table, row);
+            Map<String, Object> pending = key != null ? pendingValues(key) : null;
+
+            if (pending == null) {
+                result.add(row);
+                continue;
+            }
+
+            Map<String, Object> merged = new HashMap<>(row);
+            merged.putAll(pending);
+            result.add(merged);
+            seen.add(key);
+        }
+
+        RowKey lookup = pointLookupKey(table, keys, conditions, params);
+        if (lookup != null && !seen.contains(lookup)) {
+            Map<String, Object> pending = pendingValues(lookup);
+            if (pending != null) {
+                result.add(new HashMap<>(pending));
+            }
+        }
+
+        return result;
+    }
+
+    // Flushes run one after another, so a row never has two snapshots in flight and an older
+    // snapshot cannot commit after a newer one. Calls made while a flush is already waiting to
+    // start share it; it takes its snapshot when it starts, so it covers everything buffered now.
+    public boolean hasPending(String table) {
+        for (RowKey key : buffer.keySet()) {
+            if (key.table.equals(table)) {
+                return true;
+            }
+        }
+        for (RowKey key : flushing.keySet()) {
+            if (key.table.equals(table)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized CompletableFuture<Void> flush() {
+        if (!flushQueued) {
+            flushQueued = true;
+            lastFlush = lastFlush.exceptionally(e -> null).thenCompose(done -> startFlush());
+        }
+        return lastFlush;
+    }
+
+    private synchronized CompletableFuture<Void> startFlush() {
+        flushQueued = false;
+        if (buffer.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Map<String, List<Snapshot>> rowsByTable = new HashMap<>();
+        for (RowKey key : new ArrayList<>(buffer.keySet())) {
+            Map<String, Object> row = buffer.remove(key);
+            if (row != null) {
+                bufferedRows.decrementAndGet();
+                Snapshot snapshot = new Snapshot(key, row, snapshotVersions.incrementAndGet());
+                flushing.put(key, snapshot);
+                rowsByTable.computeIfAbsent(key.table, table -> new ArrayList<>()).add(snapshot);
+            }
+        }
+
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (Map.Entry<String, List<Snapshot>> entry : rowsByTable.entrySet()) {
+            futures.add(flushTable(entry.getKey(), entry.getValue()));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    // Flushes queue behind interactive work, and SHED may drop them; failed rows are re-queued anyway.
+    // A failed batch is retried row by row, so one bad row cannot hold back the rest of its table.
+    private CompletableFuture<Void> flushTable(String table, List<Snapshot> snapshots) {
+        List<Map<String, Object>> rows = new ArrayList<>(snapshots.size());
+        snapshots.forEach(snapshot -> rows.add(snapshot.row));
+
+        return upsert(table, rows).handle((count, error) -> {
+            if (error == null) {
+                snapshots.forEach(this::flushed);
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            logger.warning("Write-behind flush for " + table + " failed" + (rows.size() > 1 ? ", retrying "
+                    + rows.size() + " rows one by one" : "") + ": " + error.getMessage());
+            if (rows.size() == 1) {
+                failed(snapshots.get(0), error);
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+
+            List<CompletableFuture<?>> singles = new ArrayList<>(rows.size());
+            for (Snapshot snapshot : snapshots) {
+                singles.add(upsert(table, List.of(snapshot.row)).whenComplete((single, rowError) -> {
+                    if (rowError == null) {
+                        flushed(snapshot);
+                    } else {
+                        failed(snapshot, rowError);
+                    }
+                }));
+            }
+            return CompletableFuture.allOf(singles.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null);
+        }).thenCompose(done -> done);
+    }
+
+    private CompletableFuture<Integer> upsert(String table, List<Map<String, Object>> rows) {
+        try {
+            QueryBuilderImpl builder = new QueryBuilderImpl(table, provider.get(), queryCache, null, null);
+            String[] keys = keyColumns.get(table).toArray(new String[0]);
+            return builder.priority(QueryPriority.BACKGROUND).upsertMany(rows, keys);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void flushed(Snapshot snapshot) {
+        release(snapshot);
+        failedAttempts.remove(snapshot.key);
+        flushedRows.increment();
+    }
+
+    // A failed snapshot goes back under whatever was written to the row since, so newer values
+    // win column by column. A snapshot that is no longer the row's current one was superseded
+    // and is dropped. After MAX_FLUSH_ATTEMPTS the row is dead-lettered to the log instead of
+    // being retried forever.
+    private void failed(Snapshot snapshot, Throwable error) {
+        RowKey key = snapshot.key;
+        if (!release(snapshot)) {
+            return;
+        }
+
+        int attempts = failedAttempts.merge(key, 1, Integer::sum);
+        if (attempts >= MAX_FLUSH_ATTEMPTS) {
+            failedAttempts.remove(key);
+            deadLetter(key, snapshot.row, attempts + " failed flushes (" + error.getMessage() + ")");
+            return;
+        }
+
+        buffer.compute(key, (k, newer) -> {
+            if (newer == null) {
+                bufferedRows.incrementAndGet();
+                return snapshot.row;
+            }
+            return merge(snapshot.row, newer);
+        });
+    }
+
+    // Clears the row's in-flight entry if it still belongs to this snapshot's version
+    private boolean release(Snapshot snapshot) {
+        boolean[] current = {false};
+        flushing.computeIfPresent(snapshot.key, (k, inFlight) -> {
+            if (inFlight.version != snapshot.version) {
+                return inFlight;
+            }
+            current[0] = true;
+            return null;
+        });
+        return current[0];
+    }
+
+    private void deadLetter(RowKey key, Map<String, Object> row, String reason) {
+        deadLetterRows.increment();
+        logger.severe("Write-behind row for " + key.table + " dropped after " + reason + ": " + row);
+    }
+
+    public int getBufferedRows() {
+        return bufferedRows.get();
+    }
+
+    public long getBufferedWrites() {
+        return bufferedWrites.sum();
+    }
+
+    public long getFlushedRows() {
+        return flushedRows.sum();
+    }
+
+    public long getDeadLetterRows() {
+        return deadLetterRows.sum();
+    }
+
+    // Nothing re-drives the buffer once the scheduler is gone, so failed rows are flushed again
+    // here until they land or run out of attempts; whatever is left after that is dead-lettered.
+    public void shutdown() {
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        scheduler.shutdown();
+
+        for (int attempt = 0; attempt < MAX_FLUSH_ATTEMPTS && !(buffer.isEmpty() && flushing.isEmpty()); attempt++) {
+            try {
+                flush().get(30, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                logger.severe("Write-behind buffer could not be flushed on shutdown: " + e.getMessage());
+                break;
+            }
+        }
+
+        for (RowKey key : new ArrayList<>(buffer.keySet())) {
+            Map<String, Object> row = buffer.remove(key);
+            if (row != null) {
+                bufferedRows.decrementAndGet();
+                deadLetter(key, row, "the final flush on shutdown");
+            }
+        }
+        if (!flushing.isEmpty()) {
+            logger.severe("Write-behind buffer shut down with " + flushing.size() + " rows still being flushed");
+        }
+    }
+
+    private Map<String, Object> pendingValues(RowKey key) {
+        Snapshot snapshot = flushing.get(key);
+        Map<String, Object> flushingRow = snapshot != null ? snapshot.row : null;
+        Map<String, Object> bufferedRow = buffer.get(key);
+
+        if (flushingRow == null) {
+            return bufferedRow;
+        }
+        if (bufferedRow == null) {
+            return flushingRow;
+        }
+
+        return merge(flushingRow, bufferedRow);
+    }
+
+    private static Map<String, Object> merge(Map<String, Object> base, Map<String, Object> changes) {
+        Map<String, Object> merged = base != null ? new LinkedHashMap<>(base) : new LinkedHashMap<>();
+        merged.putAll(changes);
+        return Collections.unmodifiableMap(merged);
+    }
+
+    private RowKey pointLookupKey(String table, List<String> keys, List<Condition> conditions, List<Object> params) {
+        if (conditions.size() != keys.size() || params.size() != keys.size()) {
+            return null;
+        }
+
+        Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < conditions.size(); i++) {
+            Condition condition = conditions.get(i);
+            if (!condition.operator.equals("=") || condition.arity != 1) {
+                return null;
+            }
+            values.put(condition.column, params.get(i));
+        }
+
+        return keyOf(table, values);
+    }
+
+    private RowKey keyOf(String table, Map<String, Object> values) {
+        List<String> keys = keyColumns.get(table);
+        if (keys == null) {
+            return null;
+        }
+
+        Object[] keyValues = new Object[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            Object value = values.get(keys.get(i));
+            if (value == null) {
+                return null;
+            }
+            keyValues[i] = KeyValues.normalize(value);
+        }
+        return new RowKey(table, List.of(keyValues));
+    }
+
+    private static class Snapshot {
+        final RowKey key;
+        final Map<String, Object> row;
+        final long version;
+
+        Snapshot(RowKey key, Map<String, Object> row, long version) {
+            this.key = key;
+            this.row = row;
+            this.version = version;
+        }
+    }
+
+    private static class RowKey {
+        final String table;
+        final List<Object> values;
+
+        RowKey(String table, List<Object> values) {
+            this.table = table;
+            this.values = values;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof RowKey other)) return false;
+            return table.equals(other.table) && values.equals(other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * table.hashCode() + values.hashCode();
+        }
+    }
+}
@@ -5,7 +5,16 @@ import de.tecca.eclipse.api.database.*;
 import de.tecca.eclipse.database.*;
 import org.bukkit.plugin.Plugin;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.time.Duration;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.io.File;
 import java.util.Optional;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -16,7 +25,19 @@ public class DatabaseAPIImpl implements DatabaseAPI {
     private MySQLProvider mysqlProvider;
     private SQLiteProvider sqliteProvider;
     private JSONProvider jsonProvider;
+    private ShardedProvider shardedProvider;
+    private final List<ConnectionManager> shardManagers = new ArrayList<>();
+    private final QueryCache queryCache = new QueryCache();
+    private final SingleFlight singleFlight = new SingleFlight();
+    private WriteBehindBuffer writeBehind;
+    private final Map<String, CounterImpl> counters = new ConcurrentHashMap<>();
+    private ScheduledExecutorService counterScheduler;
+    private ScheduledExecutorService batchLoaderScheduler;
     private DatabaseType currentType = DatabaseType.JSON_ONLY;
+    private boolean virtualThreads = false;
+    private long queryTimeoutMillis = 0;
+    private OverloadPolicy overloadPolicy = OverloadPolicy.REJECT;
+    private long jsonFlushDelayMillis = JSONProvider.DEFAULT_FLUSH_DELAY_MILLIS;
 
     public DatabaseAPIImpl(Plugin plugin) {
         this.plugin = plugin;
@@ -25,7 +46,31 @@ public class DatabaseAPIImpl implements DatabaseAPI {
 
     @Override
     public QueryBuilder table(String tableName) {
-        return new QueryBuilderImpl(tableName, getCurrentProvider());
+        return new QueryBuilderImpl(tableName, getCurrentProvider(), queryCache, singleFlight, writeBehind);
+    }
+
+    @Override
+    public <K> BatchLoader<K, Map<String, Object>> batchLoader(String tableName, String keyColumn) {
+        return batchLoader(tableName, keyColumn, BatchLoaderImpl.DEFAULT_WINDOW_MILLIS,
+                BatchLoaderImpl.DEFAULT_MAX_BATCH_SIZE, false);
+    }
+
+    @Override
+    public <K> BatchLoader<K, Map<String, Object>> batchLoader(String tableName, String keyColumn,
+                                                               long windowMillis, int maxBatchSize, boolean cached) {
+        return new BatchLoaderImpl<>(batchLoaderScheduler(), () -> table(tableName), queryCache, tableName, keyColumn,
+                windowMillis, maxBatchSize, cached);
+    }
+
+    private synchronized ScheduledExecutorService batchLoaderScheduler() {
+        if (batchLoaderScheduler == null) {
+            batchLoaderScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Eclipse-DB-BatchLoader");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return batchLoaderScheduler;
     }
 
     @Override
@@ -33,6 +78,16 @@ public class DatabaseAPIImpl implements DatabaseAPI {
         return getCurrentProvider().query(sql, params);
     }
 
+    @Override
+    public CompletableFuture<RowSet> queryRowSet(String sql, Object... params) {
+        return getCurrentProvider().queryRowSet(sql, params);
+    }
+
+    @Override
+    public <T> CompletableFuture<List<T>> query(Class<T> type, String sql, Object... params) {
+        return getCurrentProvider().queryAs(type, sql, params);
+    }
+
     @Override
     public CompletableFuture<Integer> update(String sql, Object... params) {
         return getCurrentProvider().update(sql, params);
@@ -43,6 +98,11 @@ public class DatabaseAPIImpl implements DatabaseAPI {
         return getCurrentProvider().execute(sql, params);
     }
 
+    @Override
+    public CompletableFuture<Long> stream(String sql, Consumer<Map<String, Object>> rowConsumer, Object... params) {
+        return getCurrentProvider().stream(sql, params, QueryBuilderImpl.DEFAULT_FETCH_SIZE, rowConsumer);
+    }
+
     @Override
     public <T> CompletableFuture<Void> setJSON(String key, T data) {
         return jsonProvider.setJSON(key, data);
@@ -63,6 +123,34 @@ public class DatabaseAPIImpl implements DatabaseAPI {
         return jsonProvider.listJSONKeys(prefix);
     }
 
+    @Override
+    public DatabaseAPI useLogStructuredJSON() {
+        if (!jsonProvider.isLogStructured()) {
+            // Persists anything cached in the file layout first, so the import picks it up
+            jsonProvider.shutdown();
+            jsonProvider = new JSONProvider(plugin, true);
+            jsonProvider.setFlushDelay(jsonFlushDelayMillis);
+        }
+        return this;
+    }
+
+    @Override
+    public DatabaseAPI setJSONFlushDelay(Duration delay) {
+        this.jsonFlushDelayMillis = delay.toMillis();
+        jsonProvider.setFlushDelay(jsonFlushDelayMillis);
+        return this;
+    }
+
+    @Override
+    public CompletableFuture<Void> flushJSON(String key) {
+        return jsonProvider.flush(key);
+    }
+
+    @Override
+    public CompletableFuture<Void> flushAllJSON() {
+        return jsonProvider.flushAll();
+    }
+
     @Override
     public Transaction beginTransaction() {
         if (currentType == DatabaseType.JSON_ONLY) {
@@ -71,30 +159,355 @@ public class DatabaseAPIImpl implements DatabaseAPI {
         return getCurrentProvider().beginTransaction();
     }
 
+    @Override
+    public CompletableFuture<Void> session(Consumer<Session> work) {
+        return withConnection(session -> {
+            work.accept(session);
+            return null;
+        });
+    }
+
+    // Like raw update(), session statements do not invalidate the query cache
+    @Override
+    public <T> CompletableFuture<T> withConnection(Function<Session, T> work) {
+        if (currentType == DatabaseType.JSON_ONLY) {
+            throw new UnsupportedOperationException("Sessions not supported with JSON storage");
+        }
+        return getCurrentProvider().withSession(work);
+    }
+
+    @Override
+    public DatabaseAPI setQueryCacheSize(int maxEntries) {
+        queryCache.setMaxEntries(maxEntries);
+        return this;
+    }
+
+    @Override
+    public void invalidateCache(String tableName) {
+        queryCache.invalidate(tableName);
+    }
+
+    @Override
+    public QueryCacheStats getQueryCacheStats() {
+        return queryCache.getStats();
+    }
+
+    @Override
+    public long getCoalescedQueryCount() {
+        return singleFlight.getCoalescedCount();
+    }
+
     @Override
     public DatabaseAPI configureMySQL(String host, int port, String database, String username, String password) {
         this.mysqlProvider = new MySQLProvider(host, port, database, username, password);
-        this.connectionManager = new ConnectionManager(mysqlProvider);
+        this.connectionManager = createConnectionManager(mysqlProvider);
+        this.mysqlProvider.setConnectionManager(connectionManager);
         this.currentType = DatabaseType.MYSQL;
         return this;
     }
 
     @Override
     public DatabaseAPI configureSQLite(String filename) {
-        this.sqliteProvider = new SQLiteProvider(plugin, filename);
-        this.connectionManager = new ConnectionManager(sqliteProvider);
+        return configureSQLite(filename, 0);
+    }
+
+    @Override
+    public DatabaseAPI configureSQLite(String filename, int readerConnections) {
+        this.sqliteProvider = new SQLiteProvider(plugin, filename, readerConnections);
+        this.connectionManager = createConnectionManager(sqliteProvider);
+        this.sqliteProvider.setConnectionManager(connectionManager);
         this.currentType = DatabaseType.SQLITE;
         return this;
     }
 
+    // Each "host:port" entry becomes one shard with its own pool; the port defaults to 3306
+    @Override
+    public DatabaseAPI configureShardedMySQL(String database, String username, String password, String... hostPorts) {
+        List<DatabaseProvider> shards = new ArrayList<>();
+        for (String hostPort : hostPorts) {
+            int separator = hostPort.lastIndexOf(':');
+            String host = separator >= 0 ? hostPort.substring(0, separator) : hostPort;
+            int port = separator >= 0 ? Integer.parseInt(hostPort.substring(separator + 1)) : 3306;
+
+            MySQLProvider shard = new MySQLProvider(host, port, database, username, password);
+            ConnectionManager manager = createConnectionManager(shard);
+            shard.setConnectionManager(manager);
+            shardManagers.add(manager);
+            shards.add(shard);
+        }
+        return useShards(shards);
+    }
+
+    @Override
+    public DatabaseAPI configureShardedSQLite(String... filenames) {
+        List<DatabaseProvider> shards = new ArrayList<>();
+        for (String filename : filenames) {
+            SQLiteProvider shard = new SQLiteProvider(plugin, filename);
+            ConnectionManager manager = createConnectionManager(shard);
+            shard.setConnectionManager(manager);
+            shardManagers.add(manager);
+            shards.add(shard);
+        }
+        return useShards(shards);
+    }
+
+    // New pools start with the settings already made on the API
+    private ConnectionManager createConnectionManager(DatabaseProvider provider) {
+        ConnectionManager manager = new ConnectionManager(provider, virtualThreads);
+        manager.setQueryTimeout(queryTimeoutMillis);
+        manager.setOverloadPolicy(overloadPolicy);
+        return manager;
+    }
+
+    private DatabaseAPI useShards(List<DatabaseProvider> shards) {
+        this.shardedProvider = new ShardedProvider(shards);
+        this.currentType = DatabaseType.SHARDED;
+        return this;
+    }
+
+    @Override
+    public DatabaseAPI shardKey(String tableName, String column) {
+        if (currentType != DatabaseType.SHARDED) {
+            throw new UnsupportedOperationException("Shard keys require sharded storage");
+        }
+        shardedProvider.setShardKey(tableName, column);
+        return this;
+    }
+
+    @Override
+    public DatabaseAPI addReadReplica(String host, int port) {
+        if (currentType != DatabaseType.MYSQL) {
+            throw new UnsupportedOperationException("MySQL replicas require MySQL storage");
+        }
+        connectionManager.addMySQLReplica(host, port);
+        return this;
+    }
+
+    @Override
+    public DatabaseAPI addReadReplica(String filename) {
+        if (currentType != DatabaseType.SQLITE) {
+            throw new UnsupportedOperationException("SQLite replicas require SQLite storage");
+        }
+        connectionManager.addSQLiteReplica(new File(plugin.getDataFolder(), filename).getAbsolutePath(),
+                Math.max(1, sqliteProvider.getReaderConnections()));
+        return this;
+    }
+
+    @Override
+    public DatabaseAPI setReplicaRouting(ReplicaRouting routing) {
+        if (connectionManager != null) {
+            connectionManager.setReplicaRouting(routing);
+        }
+        return this;
+    }
+
+    @Override
+    public <T> T onPrimary(Supplier<T> work) {
+        return ConnectionManager.onPrimary(work);
+    }
+
+    // Applies to every query without its own timeout(), on all pools including shards
+    @Override
+    public DatabaseAPI setQueryTimeout(Duration timeout) {
+        this.queryTimeoutMillis = timeout.toMillis();
+        if (connectionManager != null) {
+            connectionManager.setQueryTimeout(queryTimeoutMillis);
+        }
+        for (ConnectionManager manager : shardManagers) {
+            manager.setQueryTimeout(queryTimeoutMillis);
+        }
+        return this;
+    }
+
+    @Override
+    public <T> T withQueryTimeout(Duration timeout, Supplier<T> work) {
+        return ConnectionManager.withQueryTimeout(timeout.toMillis(), work);
+    }
+
+    @Override
+    public long getTimedOutQueryCount() {
+        long count = connectionManager != null ? connectionManager.getTimedOutQueries() : 0;
+        for (ConnectionManager manager : shardManagers) {
+            count += manager.getTimedOutQueries();
+        }
+        return count;
+    }
+
+    @Override
+    public long getCancelledQueryCount() {
+        long count = connectionManager != null ? connectionManager.getCancelledQueries() : 0;
+        for (ConnectionManager manager : shardManagers) {
+            count += manager.getCancelledQueries();
+        }
+        return count;
+    }
+
+    @Override
+    public DatabaseAPI setOverloadPolicy(OverloadPolicy policy) {
+        this.overloadPolicy = policy;
+        for (ConnectionManager manager : activeManagers()) {
+            manager.setOverloadPolicy(policy);
+        }
+        return this;
+    }
+
+    @Override
+    public <T> T withPriority(QueryPriority priority, Supplier<T> work) {
+        return ConnectionManager.withPriority(priority, work);
+    }
+
+    // With shards, any saturated pool counts, since callers cannot tell which shard a query will hit
+    @Override
+    public boolean isOverloaded() {
+        for (ConnectionManager manager : activeManagers()) {
+            if (manager.isOverloaded()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Optional<AdmissionStats> getAdmissionStats() {
+        List<ConnectionManager> managers = activeManagers();
+        if (managers.isEmpty()) {
+            return Optional.empty();
+        }
+
+        int depth = 0;
+        int capacity = 0;
+        int interactive = 0;
+        int normal = 0;
+        int background = 0;
+        long executed = 0;
+        long rejected = 0;
+        long shed = 0;
+        long callerRuns = 0;
+        double waitMillis = 0;
+        double maxWaitMillis = 0;
+        for (ConnectionManager manager : managers) {
+            AdmissionStats stats = manager.getAdmissionStats();
+            depth += stats.getQueueDepth();
+            capacity += stats.getQueueCapacity();
+            interactive += stats.getInteractiveDepth();
+            normal += stats.getNormalDepth();
+            background += stats.getBackgroundDepth();
+            executed += stats.getExecutedTasks();
+            rejected += stats.getRejectedTasks();
+            shed += stats.getShedTasks();
+            callerRuns += stats.getCallerRunsTasks();
+            waitMillis += stats.getAverageWaitMillis() * stats.getExecutedTasks();
+            maxWaitMillis = Math.max(maxWaitMillis, stats.getMaxWaitMillis());
+        }
+
+        return Optional.of(new AdmissionStats(depth, capacity, interactive, normal, background,
+                executed, rejected, shed, callerRuns, executed == 0 ? 0.0 : waitMillis / executed, maxWaitMillis));
+    }
+
+    private List<ConnectionManager> activeManagers() {
+        if (currentType == DatabaseType.SHARDED) {
+            return shardManagers;
+        }
+        return connectionManager != null ? List.of(connectionManager) : List.of();
+    }
+
     @Override
     public DatabaseAPI setPoolSize(int minConnections, int maxConnections) {
         if (connectionManager != null) {
             connectionManager.setPoolSize(minConnections, maxConnections);
         }
+        for (ConnectionManager manager : shardManagers) {
+            manager.setPoolSize(minConnections, maxConnections);
+        }
+        return this;
+    }
+
+    @Override
+    public DatabaseAPI useVirtualThreads(boolean enabled) {
+        this.virtualThreads = enabled;
+        if (connectionManager != null) {
+            connectionManager.setVirtualThreads(enabled);
+        }
+        for (ConnectionManager manager : shardManagers) {
+            manager.setVirtualThreads(enabled);
+        }
+        return this;
+    }
+
+    @Override
+    public DatabaseAPI enableGroupCommit(long flushWindowMillis, int maxGroupSize) {
+        if (currentType != DatabaseType.SQLITE) {
+            throw new UnsupportedOperationException("Group commit is only supported with SQLite storage");
+        }
+        sqliteProvider.enableGroupCommit(flushWindowMillis, maxGroupSize);
+        return this;
+    }
+
+    @Override
+    public Optional<GroupCommitStats> getGroupCommitStats() {
+        if (sqliteProvider == null || sqliteProvider.getGroupCommitWriter() == null) {
+            return Optional.empty();
+        }
+        return Optional.of(sqliteProvider.getGroupCommitWriter().getStats());
+    }
+
+    @Override
+    public DatabaseAPI enableWriteBehind(long flushIntervalMillis, int maxBufferedRows) {
+        if (currentType == DatabaseType.JSON_ONLY) {
+            throw new UnsupportedOperationException("Write-behind is not supported with JSON storage");
+        }
+        if (writeBehind == null) {
+            writeBehind = new WriteBehindBuffer(this::getCurrentProvider, queryCache, plugin.getLogger(),
+                    flushIntervalMillis, maxBufferedRows);
+        }
         return this;
     }
 
+    @Override
+    public DatabaseAPI writeBehind(String tableName, String... keyColumns) {
+        if (writeBehind == null) {
+            throw new IllegalStateException("Write-behind is not enabled");
+        }
+        if (keyColumns.length == 0) {
+            throw new IllegalArgumentException("At least one key column is required");
+        }
+        writeBehind.register(tableName, keyColumns);
+        return this;
+    }
+
+    @Override
+    public CompletableFuture<Void> flushWriteBehind() {
+        return writeBehind != null ? writeBehind.flush() : CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public Counter counter(String tableName, String keyColumn, String valueColumn) {
+        return counter(tableName, keyColumn, valueColumn, CounterImpl.DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    // One counter per column, so every caller adds to the same deltas
+    @Override
+    public Counter counter(String tableName, String keyColumn, String valueColumn, long flushIntervalMillis) {
+        if (currentType == DatabaseType.JSON_ONLY) {
+            throw new UnsupportedOperationException("Counters are not supported with JSON storage");
+        }
+        return counters.computeIfAbsent(tableName + "." + keyColumn + "." + valueColumn,
+                name -> new CounterImpl(counterScheduler(), this::getCurrentProvider, queryCache, plugin.getLogger(),
+                        tableName, keyColumn, valueColumn, flushIntervalMillis));
+    }
+
+    // Owned by this instance so a plugin reload does not leave the thread and classloader behind
+    private synchronized ScheduledExecutorService counterScheduler() {
+        if (counterScheduler == null) {
+            counterScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Eclipse-DB-Counters");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return counterScheduler;
+    }
+
     @Override
     public boolean isConnected() {
         return getCurrentProvider().isConnected();
@@ -107,8 +520,26 @@ public class DatabaseAPIImpl implements DatabaseAPI {
 
     @Override
     public void shutdown() {
-        if (connectionManager != null) {
-            connectionManager.shutdown();
+        // Buffered upserts and counter deltas have to reach the database before the pools close
+        counters.values().forEach(CounterImpl::shutdown);
+        if (counterScheduler != null) {
+            counterScheduler.shutdown();
+        }
+        if (batchLoaderScheduler != null) {
+            batchLoaderScheduler.shutdown();
+        }
+        if (writeBehind != null) {
+            writeBehind.shutdown();
+        }
+        queryCache.invalidateAll();
+        if (mysqlProvider != null) {
+            mysqlProvider.shutdown();
+        }
+        if (sqliteProvider != null) {
+            sqliteProvider.shutdown();
+        }
+        if (shardedProvider != null) {
+            shardedProvider.shutdown();
         }
         if (jsonProvider != null) {
             jsonProvider.shutdown();
@@ -123,6 +554,9 @@ public class DatabaseAPIImpl implements DatabaseAPI {
             case SQLITE -> {
                 return sqliteProvider;
             }
+            case SHARDED -> {
+                return shardedProvider;
+            }
             default -> {
                 return jsonProvider;
             }